@@ -15,27 +15,59 @@
  */
 package tracexml;
 
-import java.io.FileWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import org.jdom2.Attribute;
+import org.jdom2.Content;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.Namespace;
+import org.jdom2.Text;
 import org.jdom2.output.XMLOutputter;
 
 /**
  *  CdiscGraphML generates a GraphML version of the internal graph built from
- *  the ODM-XML and Define-XML files.
+ *  the ODM-XML and Define-XML files. Large graphs, and graphs with yEd extensions, are streamed
+ *  to the file with XMLStreamWriters instead of building the full document - chunks of nodes and
+ *  edges are serialized in parallel from the GraphExport traversal and written in order. Streamed
+ *  yEd graphics are spliced in from templates rendered once by YedExt. A GraphML filename with a .gz
+ *  extension is written gzip-compressed.
  *  @version 0.1 
 */
 public class CdiscGraphML {
+    /** graphs with at least this many nodes are streamed to the GraphML file by default */
+    public static final int STREAMING_NODE_COUNT = 10000;
+    private static final int VERTICES_PER_CHUNK = 1024;
+    // element types with a shared yEd node style in resource order - the last style is used for other types
+    private static final List<String> STYLE_NODE_TYPES = Arrays.asList("FormDef", "ItemGroupDef", "ItemDef", "MethodDef", "");
     private String xmlFileName = "";
     private final Namespace ns = Namespace.getNamespace("http://graphml.graphdrawing.org/xmlns");
     private Document document;
     private HashMap<String, String> keyTable = new HashMap<>();
     private boolean yedExtension;
     private YedExt yed;
+    private Boolean streaming;
+    private final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+    private boolean isFixInvalidByte = false;
 
     /** CdiscGraphML constructor
      * @param graphMLFileName String containing the GraphML output filename and path
@@ -51,14 +83,292 @@ public class CdiscGraphML {
      * @param g the Digraph object of the graph built using the ODM and Define-XML files
      */
     public void createGraphMLOutput(Digraph g) {
+        createGraphMLOutput(g.freeze());
+    }
+
+    /**  createGraphMLOutput executes the generation of the GraphML file from a frozen graph
+     * @param g the CsrGraph object frozen from the graph built using the ODM and Define-XML files
+     */
+    public void createGraphMLOutput(CsrGraph g) {
+        try {
+            writeGraphML(g);
+        } catch (IOException ex) {
+            System.out.println("Error writing the GraphML file " + xmlFileName + ". " + ex.getMessage());
+        }
+    }
+
+    /**  writeGraphML generates the GraphML file from a frozen graph and reports any error to the caller
+     * @param g the CsrGraph object frozen from the graph built using the ODM and Define-XML files
+     * @throws IOException if the GraphML file cannot be serialized or written
+     */
+    public void writeGraphML(CsrGraph g) throws IOException {
+        if (streaming == null ? (yedExtension || g.vertexCount() >= STREAMING_NODE_COUNT) : streaming) {
+            streamGraphMLOutput(g);
+            return;
+        }
         Element root = createRootNode();
         document = new Document(root);
         createKeyDefinitions(root);
         createGraph(root, g);        
     }
+
+    /**
+     * setStreaming overrides the choice of streaming the GraphML file based on the graph size and yEd extensions
+     * @param streaming Boolean true to stream the GraphML file, false to build the full document first
+     */
+    public void setStreaming(Boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * setFixInvalidByte overrides the fix-invalid-byte-1 configuration option for this GraphML file
+     * @param fixInvalidByte true to repair characters that are not allowed in XML as the file is written
+     */
+    public void setFixInvalidByte(boolean fixInvalidByte) {
+        this.isFixInvalidByte = fixInvalidByte;
+    }
+
+    /* write the GraphML file through a channel - node and edge chunks are serialized in parallel
+       to byte buffers and written in order */
+    private void streamGraphMLOutput(CsrGraph g) throws IOException {
+        // the root and key definitions are small so they are built once and streamed
+        Element root = createRootNode();
+        createKeyDefinitions(root);
+        GraphExport export = new GraphExport(g);
+        assignNodeIds(export);
+        try (WritableByteChannel channel = GraphExport.openChannel(xmlFileName)) {
+            ByteArrayOutputStream frame = new ByteArrayOutputStream();
+            XMLStreamWriter writer = createWriter(frame);
+            writer.writeStartDocument("UTF-8", "1.0");
+            writeStartTag(writer, root, false);
+            for (Element key : root.getChildren()) {
+                writeElement(writer, key);
+            }
+            writer.writeStartElement(ns.getPrefix(), "graph", ns.getURI());
+            writer.writeAttribute("edgedefault", "directed");
+            writer.writeAttribute("id", "G");
+            writer.writeCharacters("");
+            writer.flush();
+            writeBytes(channel, frame.toByteArray());
+            frame.reset();
+            writeChunks(channel, export);
+            writer.writeEndElement();
+            if (yedExtension) writeElement(writer, createStyleResources());
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+            writeBytes(channel, frame.toByteArray());
+            writer.close();
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    /* assign the GraphML node ids before any chunk is serialized so edges in any chunk can refer to them */
+    private void assignNodeIds(GraphExport export) {
+        CsrGraph g = export.getGraph();
+        for (int id = 0; id < g.vertexCount(); id++) {
+            if (export.getNodeNumber(id) >= 0) g.getVertex(id).setNodeId("n" + export.getNodeNumber(id));
+        }
+    }
+
+    /* serialize the nodes and then the edges in chunks on a worker pool - a bounded number of chunks
+       are in flight so memory use does not grow with the size of the graph */
+    private void writeChunks(WritableByteChannel channel, GraphExport export) throws IOException {
+        CsrGraph g = export.getGraph();
+        int workers = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+        String formatCode = getFormatForLength(g);
+        try {
+            for (int start = 0; start < g.vertexCount(); start += VERTICES_PER_CHUNK) {
+                final int first = start;
+                final int last = Math.min(start + VERTICES_PER_CHUNK, g.vertexCount());
+                inFlight.add(pool.submit(() -> serializeNodes(export, formatCode, first, last)));
+                if (inFlight.size() >= 2 * workers) writeBytes(channel, inFlight.poll().get());
+            }
+            int edgeCount = 0;
+            for (int start = 0; start < g.vertexCount(); start += VERTICES_PER_CHUNK) {
+                final int first = start;
+                final int last = Math.min(start + VERTICES_PER_CHUNK, g.vertexCount());
+                final int firstEdge = edgeCount;
+                edgeCount += export.countEdges(first, last);
+                inFlight.add(pool.submit(() -> serializeEdges(export, first, last, firstEdge)));
+                if (inFlight.size() >= 2 * workers) writeBytes(channel, inFlight.poll().get());
+            }
+            while (!inFlight.isEmpty()) {
+                writeBytes(channel, inFlight.poll().get());
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new IOException("Unable to serialize the graph. " + ex.getMessage(), ex);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /* serialize the nodes of the vertices first to last - 1 */
+    private byte[] serializeNodes(GraphExport export, String formatCode, int first, int last) 
+            throws XMLStreamException, IOException {
+        ChunkSerializer chunk = new ChunkSerializer(formatCode);
+        export.exportNodes(chunk, first, last);
+        chunk.endGraph();
+        return chunk.toByteArray();
+    }
+
+    /* serialize the edges from the sources of the vertices first to last - 1 */
+    private byte[] serializeEdges(GraphExport export, int first, int last, int firstEdge) 
+            throws XMLStreamException, IOException {
+        ChunkSerializer chunk = new ChunkSerializer(null);
+        export.exportEdges(chunk, first, last, firstEdge);
+        chunk.endGraph();
+        return chunk.toByteArray();
+    }
+
+    /* serializes the nodes or edges of a chunk of the traversal to a byte buffer */
+    private class ChunkSerializer implements GraphExporter {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final XMLStreamWriter writer;
+        private final String formatCode;
+
+        ChunkSerializer(String formatCode) throws XMLStreamException {
+            this.formatCode = formatCode;
+            writer = createWriter(buffer);
+        }
+
+        @Override
+        public void startGraph(GraphExport export) {
+        }
+
+        @Override
+        public void exportNode(Vertex v, int nodeNumber) throws IOException {
+            try {
+                writeNode(writer, buffer, v, createNode(v, nodeNumber, formatCode, false), nodeNumber);
+            } catch (XMLStreamException ex) {
+                throw new IOException(ex.getMessage(), ex);
+            }
+        }
+
+        @Override
+        public void exportEdge(Vertex source, Vertex target, int edgeNumber) throws IOException {
+            try {
+                writeEdge(writer, buffer, createNewEdge(source, target, edgeNumber, false), edgeNumber);
+            } catch (XMLStreamException ex) {
+                throw new IOException(ex.getMessage(), ex);
+            }
+        }
+
+        @Override
+        public void endGraph() throws IOException {
+            try {
+                writer.flush();
+                writer.close();
+            } catch (XMLStreamException ex) {
+                throw new IOException(ex.getMessage(), ex);
+            }
+        }
+
+        byte[] toByteArray() {
+            return buffer.toByteArray();
+        }
+    }
+
+    /* the output factory is not guaranteed to be thread safe so writer creation is serialized */
+    private XMLStreamWriter createWriter(OutputStream out) throws XMLStreamException {
+        synchronized (outputFactory) {
+            if (isFixInvalidByte) return outputFactory.createXMLStreamWriter(openXmlWriter(out));
+            return outputFactory.createXMLStreamWriter(out, "UTF-8");
+        }
+    }
+
+    /* UTF-8 writer for the GraphML content - invalid characters are repaired as they are written if configured */
+    private Writer openXmlWriter(OutputStream out) {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        return isFixInvalidByte ? new XmlSanitizingWriter(writer) : writer;
+    }
+
+    private void writeBytes(WritableByteChannel channel, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /* stream a node element, splicing in the yEd graphics before the detailed description */
+    private void writeNode(XMLStreamWriter writer, OutputStream out, Vertex v, Element node, Integer nodeCount) 
+            throws XMLStreamException, IOException {
+        writeStartTag(writer, node, true);
+        for (Element data : node.getChildren()) {
+            if (yedExtension && keyTable.get("node.detailedDesc").equals(data.getAttributeValue("key"))) {
+                spliceGraphics(writer);
+                yed.writeNodeGraphics(out, nodeCount.toString(), getNodeStyle(v), keyTable.get("yfiles.nodegraphics"));
+            }
+            writeElement(writer, data);
+        }
+        writer.writeEndElement();
+    }
+
+    /* stream an edge element followed by its yEd graphics */
+    private void writeEdge(XMLStreamWriter writer, OutputStream out, Element edge, Integer edgeCount) 
+            throws XMLStreamException, IOException {
+        writeStartTag(writer, edge, true);
+        for (Element data : edge.getChildren()) {
+            writeElement(writer, data);
+        }
+        if (yedExtension) {
+            spliceGraphics(writer);
+            yed.writeEdgeGraphics(out, edgeCount.toString(), keyTable.get("yfiles.edgegraphics"));
+        }
+        writer.writeEndElement();
+    }
+
+    /* close any open start tag and flush the writer so template bytes can be written to its stream */
+    private void spliceGraphics(XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeCharacters("");
+        writer.flush();
+    }
+
+    /* stream a detached element and its content - namespaces are declared once on the root element */
+    private void writeElement(XMLStreamWriter writer, Element e) throws XMLStreamException {
+        if (e.getContentSize() == 0) {
+            writer.writeEmptyElement(e.getNamespacePrefix(), e.getName(), e.getNamespaceURI());
+            writeAttributes(writer, e);
+            return;
+        }
+        writeStartTag(writer, e, true);
+        for (Content content : e.getContent()) {
+            if (content instanceof Element) {
+                writeElement(writer, (Element) content);
+            } else if (content instanceof Text) {
+                writer.writeCharacters(((Text) content).getText());
+            }
+        }
+        writer.writeEndElement();
+    }
+
+    /* stream the start tag of an element - the root start tag also declares the namespaces */
+    private void writeStartTag(XMLStreamWriter writer, Element e, boolean isDeclared) throws XMLStreamException {
+        writer.writeStartElement(e.getNamespacePrefix(), e.getName(), e.getNamespaceURI());
+        if (!isDeclared) {
+            writer.writeDefaultNamespace(e.getNamespaceURI());
+            for (Namespace additional : e.getAdditionalNamespaces()) {
+                writer.writeNamespace(additional.getPrefix(), additional.getURI());
+            }
+        }
+        writeAttributes(writer, e);
+    }
+
+    private void writeAttributes(XMLStreamWriter writer, Element e) throws XMLStreamException {
+        for (Attribute attribute : e.getAttributes()) {
+            if (attribute.getNamespacePrefix().isEmpty()) {
+                writer.writeAttribute(attribute.getName(), attribute.getValue());
+            } else {
+                writer.writeAttribute(attribute.getNamespacePrefix(), attribute.getNamespaceURI(), attribute.getName(), attribute.getValue());
+            }
+        }
+    }
    
     /* main driver for building the graph nodes and edges */
-    private void createGraph(Element root, Digraph g) {
+    private void createGraph(Element root, CsrGraph g) throws IOException {
         Element graph = new Element("graph", ns);
         graph.setAttribute(new Attribute("edgedefault", "directed"));
         graph.setAttribute(new Attribute("id", "G"));
@@ -66,111 +376,113 @@ public class CdiscGraphML {
         // add graph nodes and edges
         createGraphNodes(graph, g);
         createGraphEdges(graph, g);
+        if (yedExtension) root.addContent(createStyleResources());
         writeGraphMLFile();
     }
     
     /* build the edges connecting linked nodes in the graph */
-    private void createGraphEdges(Element graph, Digraph g) {
+    private void createGraphEdges(Element graph, CsrGraph g) {
         Integer edgeCount = 0;
-        for (String key : g.getKeys()) {
-            Vertex v = g.getVertex(key);
-            for (Vertex source: v.getSource()) {
+        for (int id = 0; id < g.vertexCount(); id++) {
+            Vertex v = g.getVertex(id);
+            for (int i = g.sourceStart(id); i < g.sourceEnd(id); i++) {
+                Vertex source = g.getVertex(g.sourceAt(i));
                 if (!source.getOid().equals("root"))
-                    createNewEdge(source, v, graph, edgeCount++);                
+                    graph.addContent(createNewEdge(source, v, edgeCount++, yedExtension));                
             }        
         }
     }
 
     /* generate an new edge to connect two nodes */
-    private void createNewEdge(Vertex source, Vertex target, Element graph, Integer edgeCount) {
+    private Element createNewEdge(Vertex source, Vertex target, Integer edgeCount, boolean isGraphics) {
         Element edge = new Element("edge", ns);       
         edge.setAttribute(new Attribute("id", "e" + edgeCount.toString()));
         if (source.getNodeId().length() < 1)
             System.out.println("Warning: edge node is missing the source CdiscGraphML.createNewEdge");
         edge.setAttribute(new Attribute("source", source.getNodeId()));
         edge.setAttribute(new Attribute("target", target.getNodeId()));               
-        graph.addContent(edge); 
         Element d1 = new Element("data", ns);                               
         d1.setAttribute(new Attribute("key", keyTable.get("edge.description")));
         d1.setText("maps-to");
         edge.addContent(d1); 
         // add node graphics for needed to support yEd
-        if (yedExtension) {
+        if (isGraphics) {
             Element d2 = new Element("data", ns);                               
             yed.createEdgeGraphics(d2, edgeCount.toString(), keyTable.get("yfiles.edgegraphics"));
             edge.addContent(d2);
         }
+        return edge;
     }
     
     /* build a node for each vertex in the graph */
-    private void createGraphNodes(Element graph, Digraph g) {
+    private void createGraphNodes(Element graph, CsrGraph g) {
         Integer nodeCount = 0;
         String formatCode = getFormatForLength(g);
-        for (String key : g.getKeys()) {
+        for (int id = 0; id < g.vertexCount(); id++) {
+            Vertex v = g.getVertex(id);
             // leave the root node out of the graph
-            if (key.equals("root")) continue;
-            Vertex v = g.getVertex(key);
-            
-            Element node = new Element("node", ns);       
-            node.setAttribute(new Attribute("id", "n" + nodeCount.toString()));
-            graph.addContent(node); 
-            // add node description as Vertex oid
-            Element d1 = new Element("data", ns);                               
-            d1.setAttribute(new Attribute("key", keyTable.get("node.description")));
-            // length of node id determined by the number of nodes in the graph
-            String formatCount = String.format(formatCode, nodeCount);
-            d1.setText(formatCount + " " +  v.getOid());
-            node.addContent(d1); 
-            // add node elementType as Vertex odmElementType
-            Element d2 = new Element("data", ns);                               
-            d2.setAttribute(new Attribute("key", keyTable.get("node.elementType")));
-            d2.setText(v.getOdmElementType());
-            node.addContent(d2); 
-            // add node lifecycleStage as Vertex odmElementType
-            Element d3 = new Element("data", ns);                               
-            d3.setAttribute(new Attribute("key", keyTable.get("node.lifecycleStage")));
-            d3.setText(v.getPhase());
-            node.addContent(d3); 
-            // add node name as Vertex name
-            Element d4 = new Element("data", ns);                               
-            d4.setAttribute(new Attribute("key", keyTable.get("node.name")));
-            d4.setText(v.getName());
-            node.addContent(d4); 
-            // add node url as Vertex filename
-            Element d5 = new Element("data", ns);                               
-            d5.setAttribute(new Attribute("key", keyTable.get("node.url")));
-            // TODO change this attribute to be the OID
-            d5.setText(v.getOid());
-            node.addContent(d5); 
-            // add node graphics for yEd
-            if (yedExtension) {
-                Element d8 = new Element("data", ns);                               
-                yed.createNodeGraphics(d8, nodeCount.toString(), getNodeColor(v), keyTable.get("yfiles.nodegraphics"));
-                node.addContent(d8);
-            }
-            
-            // add detailed description as Vertex description
-            Element d17 = new Element("data", ns);                               
-            d17.setAttribute(new Attribute("key", keyTable.get("node.detailedDesc")));
-            d17.setText(v.getDescription());
-            node.addContent(d17); 
-            
-            v.setNodeId("n" + nodeCount.toString());
+            if (v.getOid().equals("root")) continue;
+            graph.addContent(createNode(v, nodeCount, formatCode, yedExtension)); 
             nodeCount++;
         }
     }
+
+    /* generate a new node for a vertex and assign its GraphML node id */
+    private Element createNode(Vertex v, Integer nodeCount, String formatCode, boolean isGraphics) {
+        Element node = new Element("node", ns);       
+        node.setAttribute(new Attribute("id", "n" + nodeCount.toString()));
+        // add node description as Vertex oid
+        Element d1 = new Element("data", ns);                               
+        d1.setAttribute(new Attribute("key", keyTable.get("node.description")));
+        // length of node id determined by the number of nodes in the graph
+        String formatCount = String.format(formatCode, nodeCount);
+        d1.setText(formatCount + " " +  v.getOid());
+        node.addContent(d1); 
+        // add node elementType as Vertex odmElementType
+        Element d2 = new Element("data", ns);                               
+        d2.setAttribute(new Attribute("key", keyTable.get("node.elementType")));
+        d2.setText(v.getOdmElementType());
+        node.addContent(d2); 
+        // add node lifecycleStage as Vertex odmElementType
+        Element d3 = new Element("data", ns);                               
+        d3.setAttribute(new Attribute("key", keyTable.get("node.lifecycleStage")));
+        d3.setText(v.getPhase());
+        node.addContent(d3); 
+        // add node name as Vertex name
+        Element d4 = new Element("data", ns);                               
+        d4.setAttribute(new Attribute("key", keyTable.get("node.name")));
+        d4.setText(v.getName());
+        node.addContent(d4); 
+        // add node url as Vertex filename
+        Element d5 = new Element("data", ns);                               
+        d5.setAttribute(new Attribute("key", keyTable.get("node.url")));
+        // TODO change this attribute to be the OID
+        d5.setText(v.getOid());
+        node.addContent(d5); 
+        // add node graphics for yEd
+        if (isGraphics) {
+            Element d8 = new Element("data", ns);                               
+            yed.createNodeGraphics(d8, nodeCount.toString(), getNodeStyle(v), keyTable.get("yfiles.nodegraphics"));
+            node.addContent(d8);
+        }
+        
+        // add detailed description as Vertex description
+        Element d17 = new Element("data", ns);                               
+        d17.setAttribute(new Attribute("key", keyTable.get("node.detailedDesc")));
+        d17.setText(v.getDescription());
+        node.addContent(d17); 
+        
+        v.setNodeId("n" + nodeCount.toString());
+        return node;
+    }
             
     /* write the GraphML XML to a file */
-    private void writeGraphMLFile() {
-        try {
+    private void writeGraphMLFile() throws IOException {
+        try (Writer writer = openXmlWriter(GraphExport.openOutputStream(xmlFileName))) {
             XMLOutputter xmlOutput = new XMLOutputter();
             //xmlOutput.setFormat(Format.getPrettyFormat());
-            xmlOutput.output(document, new FileWriter(xmlFileName));
-            if (ConfigReader.getIsFixInvalidByte1()) 
-                Display.cleanupXmlFile(xmlFileName);
-        } catch (IOException io) {
-            System.out.println(io.getMessage());
-        }    
+            xmlOutput.output(document, writer);
+        }
     }
         
     /* create the root element for the GraphML file */
@@ -274,12 +586,25 @@ public class CdiscGraphML {
         keyTable.put("node.detailedDesc", "d17");
     }    
     
-    private String getFormatForLength(Digraph g) {
-        return "%0" + g.vertexCount().toString().length() + "d";
+    private String getFormatForLength(CsrGraph g) {
+        return "%0" + String.valueOf(g.vertexCount()).length() + "d";
+    }
+
+    /* the yEd resources section with one shared node style per element type */
+    private Element createStyleResources() {
+        List<String> styleColors = new ArrayList<>();
+        for (String nodeType : STYLE_NODE_TYPES) {
+            styleColors.add(getNodeTypeColor(nodeType));
+        }
+        Element d9 = new Element("data", ns);
+        yed.createResources(d9, styleColors, keyTable.get("yfiles.resources"));
+        return d9;
     }
 
-    private String getNodeColor(Vertex v) {
-        return getNodeTypeColor(v.getOdmElementType());
+    private String getNodeStyle(Vertex v) {
+        int styleIndex = STYLE_NODE_TYPES.indexOf(v.getOdmElementType());
+        if (styleIndex < 0) styleIndex = STYLE_NODE_TYPES.size() - 1;
+        return yed.getStyleId(styleIndex);
     }
     
     private String getNodeTypeColor(String nodeType) {
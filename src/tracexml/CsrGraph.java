@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017 Sam Hume.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tracexml;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * CsrGraph is a frozen compressed sparse row (CSR) copy of a Digraph. Each node has a dense int id
+ * assigned in Digraph key order, an OID to id dictionary, and the targets and sources of every node
+ * are stored in offset and id arrays. Built once graph construction finishes and used for searches
+ * and output. Changes made to the Digraph afterwards require a new CsrGraph.
+ * @version 0.1
+ */
+public class CsrGraph {
+    private final Vertex[] vertices;
+    private final HashMap<String, Integer> ids;
+    // targets of node id are targets[targetOffsets[id]] to targets[targetOffsets[id + 1] - 1]
+    private final int[] targetOffsets;
+    private final int[] targets;
+    // sources of node id are sources[sourceOffsets[id]] to sources[sourceOffsets[id + 1] - 1]
+    private final int[] sourceOffsets;
+    private final int[] sources;
+
+    /**
+     * CsrGraph constructor freezes the nodes and edges of a Digraph
+     * @param g Digraph object built from the ODM-XML and Define-XML files
+     */
+    public CsrGraph(Digraph g) {
+        Set<String> keys = g.getKeys();
+        int n = keys.size();
+        vertices = new Vertex[n];
+        ids = new HashMap<>(2 * n);
+        int id = 0;
+        for (String key : keys) {
+            vertices[id] = g.getVertex(key);
+            ids.put(key, id);
+            id++;
+        }
+        targetOffsets = new int[n + 1];
+        sourceOffsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            targetOffsets[i + 1] = targetOffsets[i] + vertices[i].getTarget().size();
+            sourceOffsets[i + 1] = sourceOffsets[i] + vertices[i].getSource().size();
+        }
+        targets = new int[targetOffsets[n]];
+        sources = new int[sourceOffsets[n]];
+        for (int i = 0; i < n; i++) {
+            targetOffsets[i + 1] = targetOffsets[i] + fillIds(vertices[i].getTarget(), targets, targetOffsets[i]);
+            sourceOffsets[i + 1] = sourceOffsets[i] + fillIds(vertices[i].getSource(), sources, sourceOffsets[i]);
+        }
+    }
+
+    /* copy the ids of the adjacent nodes into the edge array - returns the number copied */
+    private int fillIds(List<Vertex> adjacent, int[] edges, int start) {
+        int count = 0;
+        for (Vertex v : adjacent) {
+            Integer adjacentId = ids.get(v.getOid());
+            if (adjacentId == null) {
+                System.out.println("Warning: edge to node " + v.getOid() + " that is not in the graph (CsrGraph).");
+                continue;
+            }
+            edges[start + count++] = adjacentId;
+        }
+        return count;
+    }
+
+    /**
+     * vertexCount returns the total number of nodes in the graph including the root
+     * @return int number of nodes
+     */
+    public int vertexCount() {
+        return vertices.length;
+    }
+
+    /**
+     * getId looks up the dense id of a node
+     * @param oid String OID key of the node
+     * @return int id of the node, or -1 if the OID is not in the graph
+     */
+    public int getId(String oid) {
+        Integer id = ids.get(oid);
+        return (id == null) ? -1 : id;
+    }
+
+    /**
+     * getOid returns the OID of a node
+     * @param id int id of the node
+     * @return String OID of the node
+     */
+    public String getOid(int id) {
+        return vertices[id].getOid();
+    }
+
+    /**
+     * getVertex returns the Vertex holding the details of a node
+     * @param id int id of the node
+     * @return Vertex for the node
+     */
+    public Vertex getVertex(int id) {
+        return vertices[id];
+    }
+
+    /**
+     * targetStart returns the position of the first target of a node
+     * @param id int id of the node
+     * @return int position to pass to targetAt
+     */
+    public int targetStart(int id) {
+        return targetOffsets[id];
+    }
+
+    /**
+     * targetEnd returns the position after the last target of a node
+     * @param id int id of the node
+     * @return int position after the last target
+     */
+    public int targetEnd(int id) {
+        return targetOffsets[id + 1];
+    }
+
+    /**
+     * targetAt returns the id of the target node at a position
+     * @param position int position between targetStart and targetEnd
+     * @return int id of the target node
+     */
+    public int targetAt(int position) {
+        return targets[position];
+    }
+
+    /**
+     * sourceStart returns the position of the first source of a node
+     * @param id int id of the node
+     * @return int position to pass to sourceAt
+     */
+    public int sourceStart(int id) {
+        return sourceOffsets[id];
+    }
+
+    /**
+     * sourceEnd returns the position after the last source of a node
+     * @param id int id of the node
+     * @return int position after the last source
+     */
+    public int sourceEnd(int id) {
+        return sourceOffsets[id + 1];
+    }
+
+    /**
+     * sourceAt returns the id of the source node at a position
+     * @param position int position between sourceStart and sourceEnd
+     * @return int id of the source node
+     */
+    public int sourceAt(int position) {
+        return sources[position];
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017 Sam Hume.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tracexml;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * CsvGraphExporter writes the graph as a node CSV file and an edge CSV file for graph database bulk
+ * loaders (e.g. neo4j-admin import). The header row of each file describes its columns: nodes are keyed
+ * by OID and labelled with their element type, and each edge connects a source OID to a target OID.
+ * Both files are written in one pass of the GraphExport traversal through buffered channels, and
+ * are gzip-compressed if their filenames have a .gz extension. Fields are quoted as in RFC 4180.
+ * @version 0.1
+ */
+public class CsvGraphExporter implements GraphExporter {
+    private static final int BUFFER_SIZE = 65536;
+    private static final String NODE_HEADER = "oid:ID,name,phase,elementType,originType,description,:LABEL";
+    private static final String EDGE_HEADER = ":START_ID,:END_ID,:TYPE";
+    private static final String EDGE_TYPE = "maps-to";
+    private final String nodeFileName;
+    private final String edgeFileName;
+    private final ByteBuffer nodeBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer edgeBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder row = new StringBuilder();
+    private WritableByteChannel nodeChannel;
+    private WritableByteChannel edgeChannel;
+
+    /**
+     * CsvGraphExporter constructor
+     * @param nodeFileName String path and filename of the node CSV file
+     * @param edgeFileName String path and filename of the edge CSV file
+     */
+    public CsvGraphExporter(String nodeFileName, String edgeFileName) {
+        this.nodeFileName = nodeFileName;
+        this.edgeFileName = edgeFileName;
+    }
+
+    @Override
+    public void startGraph(GraphExport export) throws IOException {
+        nodeChannel = GraphExport.openChannel(nodeFileName);
+        try {
+            edgeChannel = GraphExport.openChannel(edgeFileName);
+            row.setLength(0);
+            writeRow(nodeChannel, nodeBuffer, row.append(NODE_HEADER));
+            row.setLength(0);
+            writeRow(edgeChannel, edgeBuffer, row.append(EDGE_HEADER));
+        } catch (IOException | RuntimeException ex) {
+            // endGraph is not called when startGraph fails, so close the files opened here
+            try {
+                closeChannels();
+            } catch (IOException closeEx) {
+                ex.addSuppressed(closeEx);
+            }
+            throw ex;
+        }
+    }
+
+    @Override
+    public void exportNode(Vertex v, int nodeNumber) throws IOException {
+        row.setLength(0);
+        appendField(row, v.getOid()).append(',');
+        appendField(row, v.getName()).append(',');
+        appendField(row, v.getPhase()).append(',');
+        appendField(row, v.getOdmElementType()).append(',');
+        appendField(row, v.getOriginType()).append(',');
+        appendField(row, v.getDescription()).append(',');
+        appendField(row, v.getOdmElementType());
+        writeRow(nodeChannel, nodeBuffer, row);
+    }
+
+    @Override
+    public void exportEdge(Vertex source, Vertex target, int edgeNumber) throws IOException {
+        row.setLength(0);
+        appendField(row, source.getOid()).append(',');
+        appendField(row, target.getOid()).append(',');
+        row.append(EDGE_TYPE);
+        writeRow(edgeChannel, edgeBuffer, row);
+    }
+
+    @Override
+    public void endGraph() throws IOException {
+        try {
+            if (nodeChannel != null) flush(nodeChannel, nodeBuffer);
+            if (edgeChannel != null) flush(edgeChannel, edgeBuffer);
+        } finally {
+            closeChannels();
+        }
+    }
+
+    /* close the CSV files that are open - the edge file is closed even if closing the node file fails */
+    private void closeChannels() throws IOException {
+        try {
+            if (nodeChannel != null) nodeChannel.close();
+        } finally {
+            nodeChannel = null;
+            try {
+                if (edgeChannel != null) edgeChannel.close();
+            } finally {
+                edgeChannel = null;
+            }
+        }
+    }
+
+    /* quote a field that contains a separator, quote or line break, doubling any quotes */
+    private StringBuilder appendField(StringBuilder sb, String field) {
+        if (field == null) return sb;
+        boolean isQuoted = false;
+        for (int i = 0; i < field.length() && !isQuoted; i++) {
+            char ch = field.charAt(i);
+            isQuoted = ch == ',' || ch == '"' || ch == '\n' || ch == '\r';
+        }
+        if (!isQuoted) return sb.append(field);
+        sb.append('"');
+        for (int i = 0; i < field.length(); i++) {
+            char ch = field.charAt(i);
+            if (ch == '"') sb.append('"');
+            sb.append(ch);
+        }
+        return sb.append('"');
+    }
+
+    /* add a row to the buffer of a file, writing the buffer to its channel when it fills */
+    private void writeRow(WritableByteChannel channel, ByteBuffer buffer, StringBuilder sb) throws IOException {
+        byte[] bytes = sb.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > buffer.remaining()) flush(channel, buffer);
+        if (bytes.length > buffer.capacity()) {
+            ByteBuffer large = ByteBuffer.wrap(bytes);
+            while (large.hasRemaining()) {
+                channel.write(large);
+            }
+            return;
+        }
+        buffer.put(bytes);
+    }
+
+    private void flush(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
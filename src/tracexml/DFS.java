@@ -15,16 +15,24 @@
  */
 package tracexml;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 
 /**
- * DFS Depth-First Search class - searches the trace graph to establish node reachability
+ * DFS Depth-First Search class - searches the trace graph to establish node reachability.
+ * The search uses an explicit stack and marks visits in a BitSet over the dense node ids
+ * so deep derivation chains do not overflow the call stack. The result is kept up to date
+ * when nodes are connected to the start node, exploring only the newly reachable nodes.
  * @version 0.1
 */
 public class DFS {
-    private HashMap<String, Boolean> marked;
-    private Digraph graph;
+    private BitSet marked;
+    private BitSet unreached;
+    private int[] stack;
+    private CsrGraph graph;
     
     /**
      * DFS constructor that initiates a DFS on an internal digraph build from ODM and Define-XML
@@ -32,25 +40,83 @@ public class DFS {
      * @param startOid String with the OID of the start node for the search
      */
     public DFS(Digraph graph, String startOid) {
+        this(graph.freeze(), startOid);
+    }
+
+    /**
+     * DFS constructor that initiates a DFS on a frozen copy of the digraph
+     * @param graph CsrGraph object that contains the graph to search
+     * @param startOid String with the OID of the start node for the search
+     */
+    public DFS(CsrGraph graph, String startOid) {
         this.graph = graph;
-        marked = new HashMap<>();
-        Vertex start = graph.getVertex(startOid);
-        for (Vertex v : start.getTarget()) {
-            if (!marked.containsKey(start.getOid())) {
-                directedDFS(graph, v);
-            }
-        }    
+        marked = new BitSet(graph.vertexCount());
+        unreached = new BitSet(graph.vertexCount());
+        unreached.set(0, graph.vertexCount());
+        // each node is pushed at most once as it is marked when pushed
+        stack = new int[graph.vertexCount()];
+        int start = graph.getId(startOid);
+        if (start < 0) {
+            System.out.println("OID " + startOid + " not found.");
+            return;
+        }
+        unreached.clear(start);
+        int top = 0;
+        for (int i = graph.targetStart(start); i < graph.targetEnd(start); i++) {
+            top = push(graph.targetAt(i), top);
+        }
+        directedDFS(top);
+    }
+
+    /**
+     * connectToStart updates the search after a node is connected to the start node (e.g. the root)
+     * by exploring only the nodes that become reachable through it
+     * @param oid String with the OID of the node connected to the start node
+     * @return int number of nodes that were not reachable before the node was connected
+     */
+    public int connectToStart(String oid) {
+        int v = graph.getId(oid);
+        if (v < 0 || marked.get(v)) return 0;
+        int reachedBefore = marked.cardinality();
+        directedDFS(push(v, 0));
+        return marked.cardinality() - reachedBefore;
+    }
+
+    /* mark a node and push it on the stack if it has not been visited - returns the new top of the stack */
+    private int push(int v, int top) {
+        if (!marked.get(v)) {
+            marked.set(v);
+            unreached.clear(v);
+            stack[top++] = v;
+        }
+        return top;
     }
 
-    /* main recursive search algorithm */
-    private void directedDFS(Digraph G, Vertex v) { 
-        marked.put(v.getOid(), true);
-        for (Vertex n : v.getTarget()) {
-            if (!marked.containsKey(n.getOid())) {
-                directedDFS(graph, n);
+    /* main search algorithm - pops nodes from the explicit stack and pushes their unmarked targets */
+    private void directedDFS(int top) { 
+        while (top > 0) {
+            int v = stack[--top];
+            for (int i = graph.targetStart(v); i < graph.targetEnd(v); i++) {
+                top = push(graph.targetAt(i), top);
             }
         }    
     }
+
+    /**
+     * reachable returns the ids of the nodes reached during the DFS
+     * @return BitSet of the CsrGraph node ids that were visited during the DFS
+     */
+    public BitSet reachable() {
+        return (BitSet) marked.clone();
+    }
+
+    /**
+     * unreachable returns the ids of the nodes not reached during the DFS, excluding the start node
+     * @return BitSet of the CsrGraph node ids that were not visited during the DFS
+     */
+    public BitSet unreachable() {
+        return (BitSet) unreached.clone();
+    }
     
     /**
      * marked returns a list of keys of every node that's marked. Marked nodes
@@ -58,7 +124,23 @@ public class DFS {
      * @return Collection of String keys of the set of marked nodes that were visited during the DFS 
     */
     public  Collection<String> marked() {
-        return marked.keySet();
+        List<String> markedKeys = new ArrayList<>(marked.cardinality());
+        for (int v = marked.nextSetBit(0); v >= 0; v = marked.nextSetBit(v + 1)) {
+            markedKeys.add(graph.getOid(v));
+        }
+        return markedKeys;
+    }
+
+    /**
+     * unmarkedVertices returns the nodes that were not visited during the DFS, excluding the start node
+     * @return List of the unmarked Vertex objects in graph order
+     */
+    public List<Vertex> unmarkedVertices() {
+        List<Vertex> unmarked = new ArrayList<>(unreached.cardinality());
+        for (int id = unreached.nextSetBit(0); id >= 0; id = unreached.nextSetBit(id + 1)) {
+            unmarked.add(graph.getVertex(id));
+        }
+        return unmarked;
     }
 
     /**
@@ -67,11 +149,9 @@ public class DFS {
     */
     public HashMap<String, String> unmarked() {
         HashMap<String, String> unmarked = new HashMap<>();
-        for (String key : graph.getKeys()) {
-            Vertex v = graph.getVertex(key);
-            if (!marked.containsKey(v.getOid()) && !v.getOid().equals("root")) {
-                unmarked.put(v.getOid(), v.getOriginType());
-            }
+        for (int id = unreached.nextSetBit(0); id >= 0; id = unreached.nextSetBit(id + 1)) {
+            Vertex v = graph.getVertex(id);
+            unmarked.put(v.getOid(), v.getOriginType());
         }
         return unmarked;
     }    
@@ -17,8 +17,15 @@ package tracexml;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import javax.xml.stream.XMLStreamException;
 import org.jdom2.Attribute;
 import org.jdom2.Document;
 import org.jdom2.Element;
@@ -34,17 +41,43 @@ import org.jdom2.input.SAXBuilder;
 public class DefineGraph {
     private Digraph g;
     private String phase;
-    private HashMap<String, Vertex> notFoundItems = new HashMap<>(); 
+    // several targets may reference the same source item that is not found yet
+    private LinkedHashMap<String, List<Vertex>> notFoundItems = new LinkedHashMap<>(); 
+    private final boolean deferMissingNodes;
+    private boolean parallelBuild = false;
+    private boolean verbose = false;
+    // qualified names assigned in document order so the parallel build names nodes as the sequential build does
+    private HashMap<String, String> itemQualifiedNames;
+    // number of ItemGroupDefs processed sequentially by a fork-join work unit
+    private static final int ITEM_GROUPS_PER_TASK = 8;
     private Namespace ons;    // ODM namespace
+    private OidIndex mdvIndex;  // OID look-up tables for the MetaDataVersion
     private final Namespace dns = Namespace.getNamespace("def", "http://www.cdisc.org/ns/def/v2.0");
     private final Namespace tns = Namespace.getNamespace("trc", "http://www.cdisc.org/ns/trace/v1.0");
+
+    /**
+     * DefineGraph constructor that re-checks the missing source nodes once the Define-XML file is processed
+     */
+    public DefineGraph() {
+        this(false);
+    }
+
+    /**
+     * DefineGraph constructor
+     * @param deferMissingNodes if true the missing source nodes are not re-checked until resolveMissingNodes
+     * is called; used when each phase is built in its own graph and sources may exist in another phase
+     */
+    public DefineGraph(boolean deferMissingNodes) {
+        this.deferMissingNodes = deferMissingNodes;
+    }
     
     /** 
      * buildDefGraph Drives the implementation of a digraph based on the contents of Define-XML
      * @param graph Digraph object to add the Define-XML nodes to
      * @param metadata Vertex object that contains information needed on the Define-XML file
+     * @throws TraceException if the Define-XML file cannot be opened or parsed
      */
-    public void buildDefGraph(Digraph graph, Vertex metadata) {
+    public void buildDefGraph(Digraph graph, Vertex metadata) throws TraceException {
         g = graph;
         phase = metadata.getPhase();
         try {
@@ -55,39 +88,158 @@ public class DefineGraph {
             ons = root.getNamespace();
             Element study = root.getChild("Study", ons);
             Element mdv = study.getChild("MetaDataVersion", ons);
-            List<Element> igList = mdv.getChildren("ItemGroupDef", ons);
+            // index the OID definitions once so ItemRefs are resolved without re-scanning the MetaDataVersion
+            mdvIndex = new OidIndex(mdv);
+            addItemGroups(mdv.getChildren("ItemGroupDef", ons));
+        } catch(JDOMException e){
+            throw new TraceException("Unable to parse the Define-XML file " + metadata.getFileName() + ". " + e.getMessage(), e);
+        } catch(IOException ioe){
+            throw new TraceException("Unable to open the Define-XML file " + metadata.getFileName() + ". " + ioe.getMessage(), ioe);
+        }
+    }
+
+    /** 
+     * streamDefGraph builds the same digraph as buildDefGraph by streaming the Define-XML file with StAX.
+     * Only the definitions used by the graph are kept and ItemRefs are resolved at the end of the document.
+     * @param graph Digraph object to add the Define-XML nodes to
+     * @param metadata Vertex object that contains information needed on the Define-XML file
+     * @throws TraceException if the Define-XML file cannot be opened or parsed
+     */
+    public void streamDefGraph(Digraph graph, Vertex metadata) throws TraceException {
+        g = graph;
+        phase = metadata.getPhase();
+        try {
+            StaxMetadataReader reader = new StaxMetadataReader(
+                    new HashSet<>(Arrays.asList("ItemDef", "ValueListDef", "MethodDef")), "ItemGroupDef");
+            reader.read(metadata.getFileName());
+            ons = reader.getNamespace();
+            mdvIndex = reader.getIndex();
+            addItemGroups(reader.getWalkList());
+        } catch(JDOMException | XMLStreamException e){
+            throw new TraceException("Unable to parse the Define-XML file " + metadata.getFileName() + ". " + e.getMessage(), e);
+        } catch(IOException ioe){
+            throw new TraceException("Unable to open the Define-XML file " + metadata.getFileName() + ". " + ioe.getMessage(), ioe);
+        }
+    }
+
+    /**
+     * setParallelBuild selects building the ItemGroupDefs concurrently on the fork-join pool
+     * @param parallelBuild if true the ItemGroupDefs are split into work units that are built concurrently
+     */
+    public void setParallelBuild(boolean parallelBuild) {
+        this.parallelBuild = parallelBuild;
+    }
+
+    /**
+     * setVerbose reports duplicate and missing nodes found while building the graph to the console
+     * @param verbose if true duplicate sources and targets, missing sources, and missing value lists are listed
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /* generate graph nodes for each ItemGroupDef and the ItemDefs it references */
+    private void addItemGroups(List<Element> igList) {
+        if (parallelBuild) {
+            assignQualifiedNames(igList);
+            ForkJoinPool.commonPool().invoke(new ItemGroupTask(igList, 0, igList.size()));
+        } else {
             for (Element igNode: igList) {
-               // create the item group node and add it to the graph
-               Vertex vItemGroup = new Vertex(igNode.getAttributeValue("OID"));
-               vItemGroup.setName(igNode.getAttributeValue("Name"));
-               vItemGroup.setPhase(phase);
-               // origin for a node that represents a collection of variables
-               vItemGroup.setOriginType("Collection");
-               vItemGroup.setOdmElementType("ItemGroupDef");
-               vItemGroup.setQualifiedName(vItemGroup.getOid()); 
-               
-               Element desc = igNode.getChild("Description", ons);
-               if (desc != null) {
-                  Element tt = desc.getChild("TranslatedText", ons);
-                  vItemGroup.setDescription(tt.getTextNormalize());
-               }   
-               g.addVertex(vItemGroup);
-               List<Element> itemList = igNode.getChildren("ItemRef", ons);
-               for (Element itNode: itemList) {
-                   getItemDef(mdv, vItemGroup, itNode);
-               }
+                addItemGroup(igNode);
             }
+        }
         // re-check for the missing nodes (e.g. could reference a source in the same file that wasn't processed yet)
-        reCheckMissingNodes();
-        } catch(JDOMException e){
-            System.out.println("Unable to parse the Define-XML file " + metadata.getFileName() + ". " + e.getMessage());
-            System.exit(0);
-        } catch(IOException ioe){
-            System.out.println("Unable to open the Define-XML file " + metadata.getFileName() + ". " + ioe.getMessage());
-            System.exit(0);
+        if (!deferMissingNodes) reCheckMissingNodes();
+    }
+
+    /* create the item group node, add it to the graph, and process its ItemRefs */
+    private void addItemGroup(Element igNode) {
+        Vertex vItemGroup = new Vertex(igNode.getAttributeValue("OID"));
+        vItemGroup.setName(igNode.getAttributeValue("Name"));
+        vItemGroup.setPhase(phase);
+        // origin for a node that represents a collection of variables
+        vItemGroup.setOriginType("Collection");
+        vItemGroup.setOdmElementType("ItemGroupDef");
+        vItemGroup.setQualifiedName(vItemGroup.getOid()); 
+        
+        Element desc = igNode.getChild("Description", ons);
+        if (desc != null) {
+           Element tt = desc.getChild("TranslatedText", ons);
+           vItemGroup.setDescription(tt.getTextNormalize());
+        }   
+        g.addVertex(vItemGroup);
+        List<Element> itemList = igNode.getChildren("ItemRef", ons);
+        for (Element itNode: itemList) {
+            getItemDef(vItemGroup, itNode);
+        }
+    }
+
+    /* fork-join work unit that builds a range of the ItemGroupDefs */
+    private class ItemGroupTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<Element> igList;
+        private final int start;
+        private final int end;
+
+        ItemGroupTask(List<Element> igList, int start, int end) {
+            this.igList = igList;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= ITEM_GROUPS_PER_TASK) {
+                for (int i = start; i < end; i++) {
+                    addItemGroup(igList.get(i));
+                }
+            } else {
+                int mid = (start + end) >>> 1;
+                invokeAll(new ItemGroupTask(igList, start, mid), new ItemGroupTask(igList, mid, end));
+            }
         }
     }
 
+    /* an ItemDef is named by the first ItemGroupDef or ValueListDef item that references it in document order */
+    private void assignQualifiedNames(List<Element> igList) {
+        itemQualifiedNames = new HashMap<>();
+        for (Element igNode : igList) {
+            for (Element itNode : igNode.getChildren("ItemRef", ons)) {
+                assignQualifiedName(igNode.getAttributeValue("OID"), itNode);
+            }
+        }
+    }
+
+    /* follows the same path through the ItemRefs and ValueListDefs as getItemDef */
+    private void assignQualifiedName(String parentName, Element itRefNode) {
+        Element it = mdvIndex.get("ItemDef", itRefNode.getAttributeValue("ItemOID"));
+        if (it == null) return;
+        String oid = it.getAttributeValue("OID");
+        String qualifiedName = itemQualifiedNames.get(oid);
+        if (qualifiedName == null) {
+            qualifiedName = g.doesVertexExist(oid) ? g.getVertex(oid).getQualifiedName() : parentName + ":" + oid;
+            itemQualifiedNames.put(oid, qualifiedName);
+        }
+        String valueListOID = getValueListOID(it);
+        if (getItemMethodOID(itRefNode).isEmpty() && valueListOID.length() > 0) {
+            Element vlm = mdvIndex.get("ValueListDef", valueListOID);
+            if (vlm != null) {
+                for (Element itRef : vlm.getChildren("ItemRef", ons)) {
+                    assignQualifiedName(qualifiedName, itRef);
+                }
+            }
+        }
+    }
+
+    /**
+     * resolveMissingNodes re-checks the source nodes that were not found while building a deferred phase graph
+     * @param graph Digraph object containing the merged graph of all life-cycle phases
+     */
+    public void resolveMissingNodes(Digraph graph) {
+        g = graph;
+        reCheckMissingNodes();
+    }
+
     /* re-test all nodes listed as not found */
     private void reCheckMissingNodes() {
         for (String itemOID : notFoundItems.keySet()) {
@@ -98,9 +250,12 @@ public class DefineGraph {
                 String qualifiedName = findVertex.getQualifiedName();
                 Vertex vSi = lookupSrcNodeByName(itemOID, qualifiedName);
                 if (vSi != null) {
-                    Vertex vTarget = notFoundItems.get(itemOID);
-                    vTarget.addSource(vSi);
-                    vSi.addTarget(vTarget);
+                    for (Vertex queuedTarget : notFoundItems.get(itemOID)) {
+                        // a target also defined in an earlier phase was folded into that node by Digraph.merge
+                        Vertex vTarget = g.getVertex(queuedTarget.getOid());
+                        vTarget.addSource(vSi, verbose);
+                        vSi.addTarget(vTarget, verbose);
+                    }
                 } else {
                     System.out.println("Unable to find source item " + itemOID + " DefineGraph.lookupSrcNode");
                 }
@@ -109,35 +264,30 @@ public class DefineGraph {
     }
     
     /* generate graph nodes for the ItemDefs for an ItemGroup - also processes ItemDefs associated with ValueLists */
-    private void getItemDef (Element mdv, Vertex vItemGroup, Element itRefNode) {
-        List<Element> itList = mdv.getChildren("ItemDef", ons);
-        for (Element it : itList) {
-            // an itemDef must exist for each itemRef
-            if (it.getAttributeValue("OID").equals(itRefNode.getAttributeValue("ItemOID"))) {
-                Vertex vItem = findOrAddVertex(vItemGroup, it);    
-                vItem.addSource(vItemGroup);
-                String valueListOID = getValueListOID(it);
-                String methodOID = getItemMethodOID(itRefNode);
-                // assumption: item's have methods or VLM, not both (methods may be on VLM items)
-                if (methodOID.length() > 0) {
-                    addMethod(methodOID, vItem, mdv, it);
-                } else if (valueListOID.length() > 0) {
-                    // included in this method as makes a recursive call
-                    List<Element> valueList = mdv.getChildren("ValueListDef", dns);
-                    for (Element vlm : valueList) {
-                        if (vlm.getAttributeValue("OID").equals(valueListOID)) {
-                            List<Element> itRefList = vlm.getChildren("ItemRef", ons);
-                            for (Element itRef : itRefList) {
-                                getItemDef(mdv, vItem, itRef);
-                            }
-                        }
-                    }
-                } else {    
-                    addSourceItems(it, vItem);
+    private void getItemDef (Vertex vItemGroup, Element itRefNode) {
+        // an itemDef must exist for each itemRef
+        Element it = mdvIndex.get("ItemDef", itRefNode.getAttributeValue("ItemOID"));
+        if (it == null) return;
+        Vertex vItem = findOrAddVertex(vItemGroup, it);    
+        vItem.addSource(vItemGroup, verbose);
+        String valueListOID = getValueListOID(it);
+        String methodOID = getItemMethodOID(itRefNode);
+        // assumption: item's have methods or VLM, not both (methods may be on VLM items)
+        if (methodOID.length() > 0) {
+            addMethod(methodOID, vItem, it);
+        } else if (valueListOID.length() > 0) {
+            // included in this method as makes a recursive call
+            Element vlm = mdvIndex.get("ValueListDef", valueListOID);
+            if (vlm != null) {
+                List<Element> itRefList = vlm.getChildren("ItemRef", ons);
+                for (Element itRef : itRefList) {
+                    getItemDef(vItem, itRef);
                 }
-                vItemGroup.addTarget(vItem);
-            }    
-        }  
+            }
+        } else {    
+            addSourceItems(it, vItem);
+        }
+        vItemGroup.addTarget(vItem, verbose);
     }
 
     // an itemDef must exist for each itemRef - so find existing node or add one
@@ -154,33 +304,34 @@ public class DefineGraph {
         return vItem;
     }
     
-    // a method may be referenced by multiple ItemRefs with different sources - TODO clean up redundancy
-    private void addMethod(String methodOID, Vertex vItem, Element mdv, Element it) {
+    // a method may be referenced by multiple ItemRefs with different sources
+    private void addMethod(String methodOID, Vertex vItem, Element it) {
+        Vertex methodNode;
         if (!g.doesVertexExist(methodOID)) {
-            Vertex methodNode = getMethodDef(mdv, methodOID);
-            if (methodNode != null) {
-                methodNode.setOriginType("Method");
-                addSourceItems(it, methodNode);
-                vItem.addSource(methodNode);
-                methodNode.addTarget(vItem);
-                g.addVertex(methodNode);
-            }
-         } else {
-            // do not add the same method twice
-            Vertex methodNode = g.getVertex(methodOID);
-            addSourceItems(it, methodNode);
-            vItem.addSource(methodNode);
-            methodNode.addTarget(vItem);                        
+            methodNode = getMethodDef(methodOID);
+            if (methodNode == null) return;
+            methodNode.setOriginType("Method");
+            // do not add the same method twice - another work unit may have added it first
+            methodNode = g.addVertexIfAbsent(methodNode);
+        } else {
+            methodNode = g.getVertex(methodOID);
             if (!methodNode.getPhase().equalsIgnoreCase(this.phase)) 
                 Display.nonUniqueNodeWarning("MethodDef", methodNode.getOid(), methodNode.getPhase(), this.phase);
         }        
+        addSourceItems(it, methodNode);
+        vItem.addSource(methodNode, verbose);
+        methodNode.addTarget(vItem, verbose);                        
     }
 
     private Vertex addNewVertex(Vertex vItemGroup, Element it) {
         Vertex vItem = new Vertex(it.getAttributeValue("OID"));
         vItem.setName(it.getAttributeValue("Name"));
         vItem.setPhase(phase);
-        vItem.setQualifiedName(vItemGroup.getQualifiedName() + ":" + vItem.getOid());
+        if (itemQualifiedNames != null && itemQualifiedNames.containsKey(vItem.getOid())) {
+            vItem.setQualifiedName(itemQualifiedNames.get(vItem.getOid()));
+        } else {
+            vItem.setQualifiedName(vItemGroup.getQualifiedName() + ":" + vItem.getOid());
+        }
         vItem.setOdmElementType("ItemDef");
         Element desc = it.getChild("Description", ons);
         if (desc != null) {
@@ -200,8 +351,8 @@ public class DefineGraph {
             }
             vItem.setOriginType(originType);
         }     
-        g.addVertex(vItem);
-        return vItem;
+        // another work unit may have added the same ItemDef first
+        return g.addVertexIfAbsent(vItem);
     }
     
     /* add source items to nodes that will be used to create edges */    
@@ -219,21 +370,31 @@ public class DefineGraph {
             for (Element si : srcList) {
                 Vertex vSi = lookupSrcNode(si);
                 if (vSi != null) {
-                    vTarget.addSource(vSi);
-                    vSi.addTarget(vTarget);
+                    vTarget.addSource(vSi, verbose);
+                    vSi.addTarget(vTarget, verbose);
                 } else {
                     // nodes that reference a source in the same file may not be processed yet - recheck after all are completed
-                    if (ConfigReader.getVerbose()) System.out.println("Unable to find source node: " + si.getAttributeValue("ItemOID"));
-                    notFoundItems.put(si.getAttributeValue("ItemOID"), vTarget);
+                    if (verbose) System.out.println("Unable to find source node: " + si.getAttributeValue("ItemOID"));
+                    addNotFoundItem(si.getAttributeValue("ItemOID"), vTarget);
                 }                
             }
         }
     }
         
+    /* remember a target whose source item has not been found yet */
+    private synchronized void addNotFoundItem(String itemOID, Vertex vTarget) {
+        List<Vertex> targets = notFoundItems.get(itemOID);
+        if (targets == null) {
+            targets = new ArrayList<>();
+            notFoundItems.put(itemOID, targets);
+        }
+        targets.add(vTarget);
+    }
+        
     /* ASSUMPTION: OIDs are unique within a submission */
     private Vertex lookupSrcNodeByName(String itemOID, String qualifiedName) {
         Vertex vSrc = null;
-        if (g.getKeys().contains(itemOID)) {
+        if (g.doesVertexExist(itemOID)) {
             Vertex v = g.getVertex(itemOID);
             if (qualifiedName != null && !qualifiedName.isEmpty()) {
                 if (v.getQualifiedName().equals(qualifiedName)) {
@@ -277,33 +438,30 @@ public class DefineGraph {
             if (itNode != null) {
                 String vlName = itNode.getAttributeValue("Name");
                 if (vlName != null) {
-                    if (ConfigReader.getVerbose()) System.out.println("No value list in the ItemDef " + vlName);
+                    if (verbose) System.out.println("No value list in the ItemDef " + vlName);
                 } else {
-                    if (ConfigReader.getVerbose()) System.out.println("No value list in the ItemDef - value list name is not found.");                    
+                    if (verbose) System.out.println("No value list in the ItemDef - value list name is not found.");                    
                 } 
             }
         } 
         return valueListOID;
     }
         
-    private Vertex getMethodDef(Element mdv, String methodOID) {
+    private Vertex getMethodDef(String methodOID) {
         Vertex vMethod = null;
-        List<Element> mList = mdv.getChildren("MethodDef", ons);
-        // native JDOM searching is faster than XPath
-        for (Element m : mList) {
-            if (m.getAttributeValue("OID").equals(methodOID)) {
-                vMethod = new Vertex(methodOID);
-                vMethod.setName(m.getAttributeValue("Name"));
-                vMethod.setMethodType(m.getAttributeValue("Type"));
-                vMethod.setOdmElementType("MethodDef");
-                vMethod.setPhase(phase);
-                Element desc = m.getChild("Description", ons);
-                // ASSUMPTION: only English for prototype - expand for multi-language
-                Element tt = desc.getChild("TranslatedText", ons);
-                // ASSUMPTION: use query to lookup the FormalExpression if needed
-                vMethod.setDescription(tt.getTextNormalize());
-                break;
-            }    
+        // indexed look-up is faster than searching the MethodDefs with native JDOM or XPath
+        Element m = mdvIndex.get("MethodDef", methodOID);
+        if (m != null) {
+            vMethod = new Vertex(methodOID);
+            vMethod.setName(m.getAttributeValue("Name"));
+            vMethod.setMethodType(m.getAttributeValue("Type"));
+            vMethod.setOdmElementType("MethodDef");
+            vMethod.setPhase(phase);
+            Element desc = m.getChild("Description", ons);
+            // ASSUMPTION: only English for prototype - expand for multi-language
+            Element tt = desc.getChild("TranslatedText", ons);
+            // ASSUMPTION: use query to lookup the FormalExpression if needed
+            vMethod.setDescription(tt.getTextNormalize());
         }
         if (vMethod == null) {
             System.out.println("Unable to find method " + methodOID + ".");
@@ -19,7 +19,8 @@ import java.util.HashMap;
 import java.util.Set;
 
 /**
- * The Digraph class represents the directed graph built from the ODM and Define-XML files 
+ * The Digraph class represents the directed graph built from the ODM and Define-XML files.
+ * Adding and looking up nodes is thread-safe so a graph can be built by concurrent work units.
  * @version 0.1
  */
 public class Digraph {
@@ -40,7 +41,7 @@ public class Digraph {
      * addVertex Inserts a Vertex object into the graph if it's not already there
      * @param node  Vertex object to be inserted into the graph
      */
-    public void addVertex(Vertex node) {
+    public synchronized void addVertex(Vertex node) {
         // do not add duplicate nodes
         if (doesVertexExist(node.getOid())) {
             System.out.println("Duplicate node found (" + node.getOid() + ") and will not be added to the graph again.");
@@ -50,6 +51,58 @@ public class Digraph {
         incrementPhaseCount(node.getPhase());
     }
     
+    /**
+     * addVertexIfAbsent inserts a Vertex object into the graph unless a node with the same OID is
+     * already there; safe to call from concurrent graph builders
+     * @param node Vertex object to be inserted into the graph
+     * @return the Vertex in the graph for the OID - either the node inserted or the existing node
+     */
+    public synchronized Vertex addVertexIfAbsent(Vertex node) {
+        Vertex existing = digraph.get(node.getOid());
+        if (existing != null) {
+            return existing;
+        }
+        digraph.put(node.getOid(), node);
+        incrementPhaseCount(node.getPhase());
+        return node;
+    }
+
+    /**
+     * merge adds the nodes of a graph built for a single life-cycle phase to this graph. Phase graphs
+     * should be merged in life-cycle phase order. A node that already exists in an earlier phase is
+     * kept and the edges of the later duplicate are moved onto it.
+     * @param phaseGraph Digraph object built from a single ODM-XML or Define-XML file
+     */
+    public void merge(Digraph phaseGraph) {
+        for (String key : phaseGraph.getKeys()) {
+            // each graph has its own root node
+            if (key.equals("root")) continue;
+            Vertex node = phaseGraph.digraph.get(key);
+            Vertex existing = digraph.get(key);
+            if (existing == null) {
+                digraph.put(key, node);
+                incrementPhaseCount(node.getPhase());
+            } else if (existing != node) {
+                Display.nonUniqueNodeWarning(node.getOdmElementType(), key, existing.getPhase(), node.getPhase());
+                foldVertex(node, existing);
+            }
+        }
+    }
+
+    /* replace a duplicate node with the existing node in the edges of its neighbors */
+    private void foldVertex(Vertex duplicate, Vertex existing) {
+        for (Vertex src : duplicate.getSource()) {
+            src.removeTarget(duplicate);
+            src.addTarget(existing);
+            existing.addSource(src);
+        }
+        for (Vertex tgt : duplicate.getTarget()) {
+            tgt.removeSource(duplicate);
+            tgt.addSource(existing);
+            existing.addTarget(tgt);
+        }
+    }
+    
     private void incrementPhaseCount(String phase) {
         Integer pCount = phaseCount.get(phase);
         pCount++;
@@ -147,7 +200,7 @@ public class Digraph {
      * @param key String key for the Vertex or node
      * @return the Vertex that matches the provided key, otherwise null
      */
-    public Vertex getVertex(String key) {
+    public synchronized Vertex getVertex(String key) {
         if (key != null && !digraph.containsKey(key)) {
             System.out.println("OID " + key + " not found.");
             return null;
@@ -168,15 +221,23 @@ public class Digraph {
      * @param key String key for the node or Vertex that is being tested for existence in the graph
      * @return boolean that indicates if the Vertex or node exists in the graph
      */
-    public boolean doesVertexExist(String key) {
+    public synchronized boolean doesVertexExist(String key) {
         return digraph.containsKey(key);
     }
     
+    /**
+     * freeze builds a compact read-only copy of the current graph for searches and output
+     * @return CsrGraph with dense int node ids and array based edges
+     */
+    public CsrGraph freeze() {
+        return new CsrGraph(this);
+    }
+
     /** 
      * vertexCount returns the total number of nodes or Vertexes in the graph
      * @return Integer that indicates the number of nodes or Vertexes in the graph
      */
-    public Integer vertexCount() {
+    public synchronized Integer vertexCount() {
         return digraph.size();
     }
 
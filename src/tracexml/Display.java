@@ -16,14 +16,11 @@
 package tracexml;
 
 import java.awt.Desktop;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.net.URI;
-import java.util.List;
 import java.util.TreeMap;
 import org.jdom2.Attribute;
 import org.jdom2.Document;
@@ -38,81 +35,40 @@ import org.jdom2.output.XMLOutputter;
 public class Display {
     
     /** 
-     * showUnreachables generates listings and reports of the unreachable nodes in the graph
-     * @param nodesAddedToRoot List of strings with the IDs of nodes added to the root for re-testing
-     * @param unreachable List of IDs for nodes that are un-reachable, but should be reachable
-     * @param expectedUnreached List of IDs for nodes that are un-reachable, and this is an expected state
-     * @param isShowResult Boolean that indicates whether or not to automatically load an HTML unreachable report
+     * showUnreachables lists the unreachable nodes in the graph to the console
+     * @param report UnreachableReport with the unreachable nodes and the nodes added to the root for re-testing
      * @param isListUnreachables Boolean that determines if the unreachables should be listed to the console
+     * @param verbose boolean if true the expected unreachables and the nodes added to the root are also listed
      */
-    public static void showUnreachables(List<String> nodesAddedToRoot, List<String> unreachable, List<String> expectedUnreached, Boolean isShowResult, Boolean isListUnreachables) {
-        // run the xslt to transform the node details file into an html trace visualization
-        String xsltFileName = ConfigReader.getXmlPath() + ConfigReader.getUnreachableXsl();
-        String htmlFileName = ConfigReader.getXmlPath() + ConfigReader.getUnreachableHtml();
-        String xmlFileName  = ConfigReader.getXmlPath() + ConfigReader.getUnreachableXml();
-        Element root = new Element("unreachable");
-        Document document = new Document(root);        
-        try {
-            addUnexpectedUnreachables(root, unreachable, isListUnreachables);
-            addExpectedUnreachables(root, expectedUnreached);            
-            // generate the xml output file
-            XMLOutputter xmlOutput = new XMLOutputter();
-            xmlOutput.setFormat(Format.getPrettyFormat());
-            xmlOutput.output(document, new FileWriter(xmlFileName));
-            // create the html file and display it
-            XsltTrace xslTrace = new XsltTrace(xmlFileName, xsltFileName);
-            xslTrace.transformXMLFile(htmlFileName);
-            if (isShowResult) DisplayHtmlPage(htmlFileName);
-            if (ConfigReader.getVerbose()) System.out.println("Nodes added to the root are:");
-            for (String addedNode : nodesAddedToRoot) {
-                if (ConfigReader.getVerbose()) System.out.println(addedNode);
-            }        
-            generateTabDelimitedOutput(xmlFileName);
-        } catch (IOException io) {
-            System.out.println("Error generating list of unreachable nodes. " + io.getMessage());
-        }    
+    public static void showUnreachables(UnreachableReport report, Boolean isListUnreachables, boolean verbose) {
+        listUnexpectedUnreachables(report, isListUnreachables, verbose);
+        listExpectedUnreachables(report, verbose);
+        if (verbose) System.out.println("Nodes added to the root are:");
+        for (Vertex addedNode : report.getAddedToRoot()) {
+            if (verbose) System.out.println(addedNode.getOid());
+        }        
     }
     
-    private static void addExpectedUnreachables(Element root, List<String> expectedUnreached) {
-        if (ConfigReader.getVerbose()) System.out.println("Nodes expected to be unreachable are:");
-        for (String expectedNode : expectedUnreached) {
-            if (ConfigReader.getVerbose()) System.out.println(expectedNode);
-            Element node = new Element("node");
-            String origin = expectedNode.substring(expectedNode.indexOf("(")+1,expectedNode.indexOf(")"));
-            String nodeId = expectedNode.substring(0, expectedNode.indexOf("(")-1);
-            node.setAttribute(new Attribute("oid", nodeId));
-            node.setAttribute(new Attribute("origin", origin));
-            node.setAttribute(new Attribute("expected", "yes"));
-            root.addContent(node); 
+    private static void listExpectedUnreachables(UnreachableReport report, boolean verbose) {
+        if (verbose) System.out.println("Nodes expected to be unreachable are:");
+        for (Vertex expectedNode : report.getExpected()) {
+            if (verbose) System.out.println(expectedNode.getOid() + " (" + expectedNode.getOriginType() + ")");
         }        
     }
 
-    private static void addUnexpectedUnreachables(Element root, List<String> unreachable, Boolean isListUnreachables) {
-        if (ConfigReader.getVerbose() || isListUnreachables) System.out.println("Unreachable nodes are:");
-        for (String orphanNode : unreachable) {
-            if (ConfigReader.getVerbose()) System.out.println(orphanNode);
-            Element node = new Element("node");
-            String origin = orphanNode.substring(orphanNode.indexOf("(")+1,orphanNode.indexOf(")"));
-            String nodeId = orphanNode.substring(0, orphanNode.indexOf("(")-1);
-            node.setAttribute(new Attribute("oid", nodeId));
-            node.setAttribute(new Attribute("origin", origin));
-            node.setAttribute(new Attribute("expected", "no"));
-            root.addContent(node); 
-            if (isListUnreachables) System.out.println(nodeId);
+    private static void listUnexpectedUnreachables(UnreachableReport report, Boolean isListUnreachables, boolean verbose) {
+        if (verbose || isListUnreachables) System.out.println("Unreachable nodes are:");
+        for (Vertex orphanNode : report.getUnexpected()) {
+            if (verbose) System.out.println(orphanNode.getOid() + " (" + orphanNode.getOriginType() + ")");
+            if (isListUnreachables) System.out.println(orphanNode.getOid());
         }
-        
-    }
-    
-    /* generates the tab delimited output of the same content included in the HTML version */
-    private static void generateTabDelimitedOutput(String xmlFileName) {
-        String xsltFileName = ConfigReader.getXmlPath() + ConfigReader.getUnreachableTextXsl();
-        String textFileName = ConfigReader.getXmlPath() + ConfigReader.getUnreachableText();
-        XsltTrace xslTrace = new XsltTrace(xmlFileName, xsltFileName);
-        xslTrace.transformXMLFile(textFileName);
     }
     
-    /* loads the HTML unreachable report in the default browser */
-    private static void DisplayHtmlPage(String htmlFileName) {
+    /**
+     * DisplayHtmlPage loads the HTML unreachable report in the default browser
+     * @param htmlFileName String path and filename of the HTML report
+     */
+    public static void DisplayHtmlPage(String htmlFileName) {
         try {
             File fileOut = new File(htmlFileName);
             URI fileUri = fileOut.toURI();
@@ -125,12 +81,13 @@ public class Display {
     }
 
     /**
-     * writeXMLFIleList saves a list of XML files generated for XQuery look-ups
-     * @param vMap a TreeMap of Vertexes that contain the XML file names retrieved by phase
+     * writeXmlFileList writes the xml-files.xml list of metadata files to the xml-path directory of a study
+     * @param vMap TreeMap of the metadata file vertices keyed by life-cycle phase
+     * @param xmlPath String directory, ending in a separator, to write xml-files.xml to
      */
-    public static void writeXmlFileList(TreeMap<String, Vertex> vMap) {
+    public static void writeXmlFileList(TreeMap<String, Vertex> vMap, String xmlPath) {
         try {
-            String xmlFileName = ConfigReader.getXmlPath() + "xml-files.xml";
+            String xmlFileName = xmlPath + "xml-files.xml";
             Element root = new Element("files");
             Document document = new Document(root);
             for (String phase : vMap.keySet()) {
@@ -141,38 +98,14 @@ public class Display {
             }
             XMLOutputter xmlOutput = new XMLOutputter();
             xmlOutput.setFormat(Format.getPrettyFormat());
-            xmlOutput.output(document, new FileWriter(xmlFileName));
+            try (Writer writer = new FileWriter(xmlFileName)) {
+                xmlOutput.output(document, writer);
+            }
         } catch (IOException ex) {
             System.out.println("Error saving xml files for xquery use. " + ex.getMessage());
         }    
     }
     
-    /** 
-     * cleanupXmlFile is used to eliminate an UTF-8 generation bug in the XML writer library
-     * @param xmlFile String with the path and filename of the GraphML file to cleanup
-     */
-    public static void cleanupXmlFile(String xmlFile) {
-        Writer writer = null;
-        try{
-            String output = TraceNode.readFile(xmlFile);
-            //force to convert UTF-8 standard will address this issue Invalid byte 1 of 1-byte UTF-8 sequence
-            String s = new String(output.trim().getBytes(),"UTF-8");
-            writer = new BufferedWriter(new FileWriter(xmlFile));
-            writer.write(s);
-        }   catch (UnsupportedEncodingException ex) {
-            System.out.println("Encoding error in the xml file " + xmlFile + ", " + ex.getMessage());            
-        }   catch (IOException ex) { 
-            System.out.println("Error reading or writing the xml file " + xmlFile + ", " + ex.getMessage());
-        } finally {
-            try { 
-                writer.close();
-            } catch (IOException ex) {
-                if (ConfigReader.getVerbose()) System.out.println("Error closing xml file " + xmlFile + ". " + ex.getMessage());
-            }
-        }
-        
-    }
-
     /**
      * nonUniqueNodeWarning prints a warning if a node generated from ODM or Define-XML already exists - a node with the same name 
      * @param nodeType String with the type of node - element type from the ODM or Define-XML file
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2017 Sam Hume.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tracexml;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * GraphExport is the graph traversal shared by the output formats. Nodes are numbered in graph order
+ * leaving out the root node, and the edges are visited grouped by target with root edges left out, 
+ * matching the node and edge ids of the GraphML file. The traversal can be run over the full graph for 
+ * a list of GraphExporters or over ranges of node ids so chunks can be serialized in parallel. Output
+ * files with a .gz extension are gzip-compressed as they are written.
+ * @version 0.1
+ */
+public class GraphExport {
+    private static final int BUFFER_SIZE = 65536;
+    private final CsrGraph graph;
+    private final int[] nodeNumbers;
+    private final int nodeCount;
+
+    /**
+     * GraphExport constructor numbers the nodes of the graph
+     * @param graph CsrGraph object frozen from the graph built using the ODM and Define-XML files
+     */
+    public GraphExport(CsrGraph graph) {
+        this.graph = graph;
+        nodeNumbers = new int[graph.vertexCount()];
+        int count = 0;
+        for (int id = 0; id < graph.vertexCount(); id++) {
+            nodeNumbers[id] = isRoot(id) ? -1 : count++;
+        }
+        nodeCount = count;
+    }
+
+    /**
+     * export runs the full traversal once, passing each node and edge to every exporter in turn. Every
+     * exporter that was started is ended, closing its output, even if the export fails.
+     * @param exporters List of GraphExporters to receive the graph
+     * @throws IOException if an exporter cannot write its output - the first error is thrown and any
+     * later errors closing the exporters are added to it as suppressed exceptions
+     */
+    public void export(List<GraphExporter> exporters) throws IOException {
+        int started = 0;
+        Exception error = null;
+        try {
+            for (GraphExporter exporter : exporters) {
+                exporter.startGraph(this);
+                started++;
+            }
+            for (int id = 0; id < graph.vertexCount(); id++) {
+                if (nodeNumbers[id] < 0) continue;
+                for (GraphExporter exporter : exporters) {
+                    exporter.exportNode(graph.getVertex(id), nodeNumbers[id]);
+                }
+            }
+            int edgeNumber = 0;
+            for (int id = 0; id < graph.vertexCount(); id++) {
+                for (int i = graph.sourceStart(id); i < graph.sourceEnd(id); i++) {
+                    if (isRoot(graph.sourceAt(i))) continue;
+                    for (GraphExporter exporter : exporters) {
+                        exporter.exportEdge(graph.getVertex(graph.sourceAt(i)), graph.getVertex(id), edgeNumber);
+                    }
+                    edgeNumber++;
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            error = ex;
+        }
+        for (int i = 0; i < started; i++) {
+            try {
+                exporters.get(i).endGraph();
+            } catch (IOException | RuntimeException ex) {
+                if (error == null) {
+                    error = ex;
+                } else {
+                    error.addSuppressed(ex);
+                }
+            }
+        }
+        if (error instanceof IOException) throw (IOException) error;
+        if (error != null) throw (RuntimeException) error;
+    }
+
+    /**
+     * exportNodes passes the nodes with ids first to last - 1 to an exporter
+     * @param exporter GraphExporter to receive the nodes
+     * @param first int id of the first node in the range
+     * @param last int id after the last node in the range
+     * @throws IOException if the exporter cannot write a node
+     */
+    public void exportNodes(GraphExporter exporter, int first, int last) throws IOException {
+        for (int id = first; id < last; id++) {
+            if (nodeNumbers[id] >= 0) exporter.exportNode(graph.getVertex(id), nodeNumbers[id]);
+        }
+    }
+
+    /**
+     * exportEdges passes the edges into the nodes with ids first to last - 1 to an exporter
+     * @param exporter GraphExporter to receive the edges
+     * @param first int id of the first node in the range
+     * @param last int id after the last node in the range
+     * @param firstEdge int number of the first edge in the range - see countEdges
+     * @throws IOException if the exporter cannot write an edge
+     */
+    public void exportEdges(GraphExporter exporter, int first, int last, int firstEdge) throws IOException {
+        int edgeNumber = firstEdge;
+        for (int id = first; id < last; id++) {
+            for (int i = graph.sourceStart(id); i < graph.sourceEnd(id); i++) {
+                if (!isRoot(graph.sourceAt(i))) 
+                    exporter.exportEdge(graph.getVertex(graph.sourceAt(i)), graph.getVertex(id), edgeNumber++);
+            }
+        }
+    }
+
+    /**
+     * countEdges counts the edges into the nodes with ids first to last - 1
+     * @param first int id of the first node in the range
+     * @param last int id after the last node in the range
+     * @return int number of edges exported for the range
+     */
+    public int countEdges(int first, int last) {
+        int edgeCount = 0;
+        for (int id = first; id < last; id++) {
+            for (int i = graph.sourceStart(id); i < graph.sourceEnd(id); i++) {
+                if (!isRoot(graph.sourceAt(i))) edgeCount++;
+            }
+        }
+        return edgeCount;
+    }
+
+    /**
+     * getter for the graph being exported
+     * @return CsrGraph being exported
+     */
+    public CsrGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * getter for the number of a node
+     * @param id int id of the node in the graph
+     * @return int number of the node, or -1 for the root node
+     */
+    public int getNodeNumber(int id) {
+        return nodeNumbers[id];
+    }
+
+    /**
+     * getter for the number of nodes exported
+     * @return int count of the nodes, not including the root node
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * isCompressed tests whether an output file is written gzip-compressed
+     * @param fileName String path and filename of the output file
+     * @return true if the filename has a .gz extension
+     */
+    public static boolean isCompressed(String fileName) {
+        return fileName.toLowerCase().endsWith(".gz");
+    }
+
+    /**
+     * openOutputStream opens a buffered output file, compressing it on the fly if it has a .gz extension
+     * @param fileName String path and filename of the output file
+     * @return OutputStream to write the file content to
+     * @throws IOException if the file cannot be created
+     */
+    public static OutputStream openOutputStream(String fileName) throws IOException {
+        if (isCompressed(fileName)) return new GZIPOutputStream(new FileOutputStream(fileName), BUFFER_SIZE);
+        return new BufferedOutputStream(new FileOutputStream(fileName), BUFFER_SIZE);
+    }
+
+    /**
+     * openChannel opens an output file as a channel, compressing it on the fly if it has a .gz extension
+     * @param fileName String path and filename of the output file
+     * @return WritableByteChannel to write the file content to
+     * @throws IOException if the file cannot be created
+     */
+    public static WritableByteChannel openChannel(String fileName) throws IOException {
+        if (isCompressed(fileName)) return Channels.newChannel(openOutputStream(fileName));
+        return new FileOutputStream(fileName).getChannel();
+    }
+
+    private boolean isRoot(int id) {
+        return graph.getOid(id).equals("root");
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2017 Sam Hume.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tracexml;
+
+import java.io.IOException;
+
+/**
+ * GraphExporter is implemented by the graph output formats that stream from the GraphExport traversal.
+ * The traversal numbers the nodes, leaving out the root node and its edges as the GraphML file does,
+ * and passes each node and then each edge to the exporter so no format builds its own copy of the graph.
+ * @version 0.1
+ */
+public interface GraphExporter {
+
+    /**
+     * startGraph is called once before the first node is exported
+     * @param export GraphExport traversal that is running the export
+     * @throws IOException if the output cannot be opened or written
+     */
+    void startGraph(GraphExport export) throws IOException;
+
+    /**
+     * exportNode is called for each node in graph order
+     * @param v Vertex of the node
+     * @param nodeNumber int number of the node - GraphML node n0 is node number 0
+     * @throws IOException if the node cannot be written
+     */
+    void exportNode(Vertex v, int nodeNumber) throws IOException;
+
+    /**
+     * exportEdge is called for each edge, grouped by target in graph order, after all nodes are exported
+     * @param source Vertex at the source of the edge
+     * @param target Vertex at the target of the edge
+     * @param edgeNumber int number of the edge - GraphML edge e0 is edge number 0
+     * @throws IOException if the edge cannot be written
+     */
+    void exportEdge(Vertex source, Vertex target, int edgeNumber) throws IOException;
+
+    /**
+     * endGraph is called once after the last edge is exported and closes the output. It is also called
+     * to close the output if the export fails after startGraph returned.
+     * @throws IOException if the output cannot be written or closed
+     */
+    void endGraph() throws IOException;
+}
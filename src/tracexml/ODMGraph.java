@@ -17,7 +17,10 @@ package tracexml;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import javax.xml.stream.XMLStreamException;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.JDOMException;
@@ -32,13 +35,24 @@ public class ODMGraph {
     private Digraph g;
     private String phase;
     private Namespace ons;    // ODM namespace
+    private OidIndex mdvIndex;  // OID look-up tables shared by the FormDef, ItemGroupDef, and ItemDef processing
+    private boolean verbose = false;
+
+    /**
+     * setVerbose reports duplicate nodes found while building the graph to the console
+     * @param verbose if true duplicate sources and targets are listed
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
     
     /**
      * buildODMGraph Main driver for parsing the ODM-XML file and nodes on the graph
      * @param graph Digraph object that the ODM-XML nodes will be added to
      * @param metadata Vertex object that maintains the information about the ODM-XML file 
+     * @throws TraceException if the ODM-XML file cannot be read or parsed
      */
-    public void buildODMGraph(Digraph graph, Vertex metadata) {
+    public void buildODMGraph(Digraph graph, Vertex metadata) throws TraceException {
         g = graph;
         phase = metadata.getPhase();
         try {
@@ -49,42 +63,66 @@ public class ODMGraph {
             ons = root.getNamespace();
             Element study = root.getChild("Study", ons);
             Element mdv = study.getChild("MetaDataVersion", ons);
-            List<Element> formList = mdv.getChildren("FormDef", ons);
-            for (Element fNode: formList) {
-               // create the form node and add it to the graph
-               Vertex vForm = new Vertex(fNode.getAttributeValue("OID"));
-               vForm.setName(fNode.getAttributeValue("Name"));
-               vForm.setPhase(phase);
-               vForm.setOdmElementType("FormDef");
-               vForm.setQualifiedName(vForm.getOid());
-               g.addVertex(vForm);
-               // assumption: each ItemGroupDef is referenced by FormDef
-               List<Element> itemGroupList = fNode.getChildren("ItemGroupRef", ons);
-               for (Element igNode: itemGroupList) {
-                   getItemGroupDef(mdv, vForm, igNode);
-               }
-            }            
+            // index the OID definitions once so references are resolved without re-scanning the MetaDataVersion
+            mdvIndex = new OidIndex(mdv);
+            addForms(mdv.getChildren("FormDef", ons));
         } catch(JDOMException | IOException e){
-            System.out.println("Error reading or parsing the ODM-XML file: " + e.getMessage());
-            System.exit(0);
+            throw new TraceException("Error reading or parsing the ODM-XML file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * streamODMGraph builds the same digraph as buildODMGraph by streaming the ODM-XML file with StAX.
+     * Only the definitions used by the graph are kept and references are resolved at the end of the document.
+     * @param graph Digraph object that the ODM-XML nodes will be added to
+     * @param metadata Vertex object that maintains the information about the ODM-XML file 
+     * @throws TraceException if the ODM-XML file cannot be read or parsed
+     */
+    public void streamODMGraph(Digraph graph, Vertex metadata) throws TraceException {
+        g = graph;
+        phase = metadata.getPhase();
+        try {
+            StaxMetadataReader reader = new StaxMetadataReader(
+                    new HashSet<>(Arrays.asList("ItemGroupDef", "ItemDef")), "FormDef");
+            reader.read(metadata.getFileName());
+            ons = reader.getNamespace();
+            mdvIndex = reader.getIndex();
+            addForms(reader.getWalkList());
+        } catch(JDOMException | XMLStreamException | IOException e){
+            throw new TraceException("Error reading or parsing the ODM-XML file: " + e.getMessage(), e);
         }
     }
+
+    /* generates the nodes for each FormDef and the ItemGroupDefs it references */
+    private void addForms(List<Element> formList) {
+        for (Element fNode: formList) {
+           // create the form node and add it to the graph
+           Vertex vForm = new Vertex(fNode.getAttributeValue("OID"));
+           vForm.setName(fNode.getAttributeValue("Name"));
+           vForm.setPhase(phase);
+           vForm.setOdmElementType("FormDef");
+           vForm.setQualifiedName(vForm.getOid());
+           g.addVertex(vForm);
+           // assumption: each ItemGroupDef is referenced by FormDef
+           List<Element> itemGroupList = fNode.getChildren("ItemGroupRef", ons);
+           for (Element igNode: itemGroupList) {
+               getItemGroupDef(vForm, igNode);
+           }
+        }            
+    }
     
     /*  generates the nodes for each ItemGroup in the ODM-XML file
         assumption: each ItemDef is referenced by an ItemGroupDef or a ValueListDef */
-    private void getItemGroupDef(Element mdv, Vertex vForm, Element igRefNode) {
-        List<Element> igList = mdv.getChildren("ItemGroupDef", ons);
-        for (Element ig : igList) {
-            // create node for each ItemGroup and add to graph
-            if (ig.getAttributeValue("OID").equals(igRefNode.getAttributeValue("ItemGroupOID"))) {
-                Vertex vItemGroup = findOrAddVertex(ig, vForm);    
-                vItemGroup.addSource(vForm);
-                vForm.addTarget(vItemGroup);
-                List<Element> itList = ig.getChildren("ItemRef", ons);
-                for (Element it : itList) {
-                    getItemDef(mdv, vItemGroup, it);
-                }
-            }
+    private void getItemGroupDef(Vertex vForm, Element igRefNode) {
+        // create node for each ItemGroup and add to graph
+        Element ig = mdvIndex.get("ItemGroupDef", igRefNode.getAttributeValue("ItemGroupOID"));
+        if (ig == null) return;
+        Vertex vItemGroup = findOrAddVertex(ig, vForm);    
+        vItemGroup.addSource(vForm, verbose);
+        vForm.addTarget(vItemGroup, verbose);
+        List<Element> itList = ig.getChildren("ItemRef", ons);
+        for (Element it : itList) {
+            getItemDef(vItemGroup, it);
         }
     }
     
@@ -113,32 +151,29 @@ public class ODMGraph {
   
     /*  generates the graph nodes for each ItemDef in the ODM-XML file and links
         the Items to the related ItemGroup     */
-    private void getItemDef (Element mdv, Vertex vItemGroup, Element itRefNode) {
-        List<Element> itList = mdv.getChildren("ItemDef", ons);
+    private void getItemDef (Vertex vItemGroup, Element itRefNode) {
+        Element it = mdvIndex.get("ItemDef", itRefNode.getAttributeValue("ItemOID"));
+        if (it == null) return;
         Vertex vItem;
-        for (Element it : itList) {
-            if (it.getAttributeValue("OID").equals(itRefNode.getAttributeValue("ItemOID"))) {
-                if (g.doesVertexExist(it.getAttributeValue("OID"))) {
-                    vItem = g.getVertex(it.getAttributeValue("OID"));
-                    if (!vItem.getPhase().equalsIgnoreCase(this.phase)) 
-                        Display.nonUniqueNodeWarning("ItemDef", vItem.getOid(), vItem.getPhase(), this.phase);
-                } else {
-                    vItem = new Vertex(it.getAttributeValue("OID"));
-                    vItem.setName(it.getAttributeValue("Name"));
-                    vItem.setPhase(phase);
-                    vItem.setOdmElementType("ItemDef");                    
-                    vItem.setQualifiedName(vItemGroup.getQualifiedName() + ":" + vItem.getOid());
-                    Element desc = it.getChild("Description", ons);
-                    if (desc != null) {
-                        Element tt = desc.getChild("TranslatedText", ons);
-                        vItem.setDescription(tt.getTextNormalize());
-                    }
-                    g.addVertex(vItem);
-                }    
-                vItem.addSource(vItemGroup);
-                vItemGroup.addTarget(vItem);
-            }    
-        }
+        if (g.doesVertexExist(it.getAttributeValue("OID"))) {
+            vItem = g.getVertex(it.getAttributeValue("OID"));
+            if (!vItem.getPhase().equalsIgnoreCase(this.phase)) 
+                Display.nonUniqueNodeWarning("ItemDef", vItem.getOid(), vItem.getPhase(), this.phase);
+        } else {
+            vItem = new Vertex(it.getAttributeValue("OID"));
+            vItem.setName(it.getAttributeValue("Name"));
+            vItem.setPhase(phase);
+            vItem.setOdmElementType("ItemDef");                    
+            vItem.setQualifiedName(vItemGroup.getQualifiedName() + ":" + vItem.getOid());
+            Element desc = it.getChild("Description", ons);
+            if (desc != null) {
+                Element tt = desc.getChild("TranslatedText", ons);
+                vItem.setDescription(tt.getTextNormalize());
+            }
+            g.addVertex(vItem);
+        }    
+        vItem.addSource(vItemGroup, verbose);
+        vItemGroup.addTarget(vItem, verbose);
     }    
 
 }
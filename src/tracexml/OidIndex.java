@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 Sam Hume.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tracexml;
+
+import java.util.HashMap;
+import org.jdom2.Element;
+
+/**
+ * OidIndex is a one-pass lookup table of the OID-bearing definitions in a MetaDataVersion
+ * (e.g. ItemDef, ValueListDef, MethodDef, CodeList, WhereClauseDef) keyed by element name and OID.
+ * Replaces the repeated linear scans of the MetaDataVersion children when resolving references.
+ * @version 0.1
+ */
+public class OidIndex {
+    private final HashMap<String, HashMap<String, Element>> index = new HashMap<>();
+
+    /**
+     * OidIndex constructor for an empty index that is loaded one definition at a time
+     */
+    public OidIndex() {
+    }
+
+    /**
+     * OidIndex constructor indexes every child of the MetaDataVersion that has an OID attribute
+     * @param mdv the MetaDataVersion element from the ODM or Define-XML file
+     */
+    public OidIndex(Element mdv) {
+        for (Element def : mdv.getChildren()) {
+            add(def);
+        }
+    }
+
+    /**
+     * add inserts a definition into the index if it has an OID attribute
+     * @param def Element definition from the MetaDataVersion (e.g. ItemDef, MethodDef)
+     */
+    public void add(Element def) {
+        String oid = def.getAttributeValue("OID");
+        if (oid == null) return;
+        HashMap<String, Element> defs = index.get(def.getName());
+        if (defs == null) {
+            defs = new HashMap<>();
+            index.put(def.getName(), defs);
+        }
+        // ASSUMPTION: OIDs are unique within a MetaDataVersion - keep the first definition as the linear scan did
+        if (!defs.containsKey(oid)) {
+            defs.put(oid, def);
+        }
+    }
+
+    /**
+     * get looks up a definition by element name and OID
+     * @param elementName String local name of the element (e.g. ItemDef, MethodDef)
+     * @param oid String OID of the element to find
+     * @return the matching Element, otherwise null
+     */
+    public Element get(String elementName, String oid) {
+        HashMap<String, Element> defs = index.get(elementName);
+        if (defs == null || oid == null) {
+            return null;
+        }
+        return defs.get(oid);
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2017 Sam Hume.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tracexml;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * SourceTrace traces a graph fragment upstream to its conclusion using the in-memory graph.
+ * Answers the same question as the trace-node, trace-node-oid and trace-node-origin XQueries
+ * shared with Trace-Query without writing or querying the GraphML file. The upstream ItemDefs of every node walked are memoized so traces
+ * that share ancestry, including traces run concurrently by runTraces, reuse each other's work.
+ * The graph must not change while traces run.
+ * @version 0.1
+ */
+public class SourceTrace {
+    private final Digraph graph;
+    // complete set of upstream ItemDefs for each node walked - shared by the nodes of a cycle
+    private final ConcurrentHashMap<Vertex, Set<Vertex>> upstreamItems = new ConcurrentHashMap<>();
+
+    /**
+     * SourceTrace constructor
+     * @param graph Digraph object built from the ODM-XML and Define-XML files
+     */
+    public SourceTrace(Digraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * runTrace walks the sources of a node to find every upstream ItemDef in the trace
+     * @param nodeOID String of the starting node OID for the trace
+     * @return HashMap of the OIDs of the ItemDefs in the trace, excluding the start node, and their origin types
+     */
+    public HashMap<String, String> runTrace(String nodeOID) {
+        HashMap<String, String> traced = new HashMap<>();
+        Vertex start = graph.getVertex(nodeOID);
+        if (start == null) {
+            System.out.println("OID " + nodeOID + " not found.");
+            return traced;
+        }
+        for (Vertex item : getUpstreamItems(start)) {
+            if (!item.getOid().equals(nodeOID)) {
+                traced.put(item.getOid(), item.getOriginType());
+            }
+        }
+        return traced;
+    }
+
+    /**
+     * traceUpstream finds every upstream ItemDef in the trace of a node
+     * @param start Vertex of the starting node for the trace
+     * @return Set of the ItemDef vertices in the trace, excluding the start node
+     */
+    public Set<Vertex> traceUpstream(Vertex start) {
+        Set<Vertex> traced = new HashSet<>(getUpstreamItems(start));
+        traced.remove(start);
+        return traced;
+    }
+
+    /**
+     * runTraces traces a batch of nodes concurrently on a worker pool
+     * @param starts List of Vertex starting nodes for the traces
+     * @return LinkedHashMap of the upstream ItemDefs for each starting node in the order given
+     * @throws TraceException if a trace fails or is interrupted
+     */
+    public LinkedHashMap<Vertex, Set<Vertex>> runTraces(List<Vertex> starts) throws TraceException {
+        LinkedHashMap<Vertex, Set<Vertex>> traces = new LinkedHashMap<>();
+        if (starts.isEmpty()) return traces;
+        int workers = Math.min(starts.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<Set<Vertex>>> results = new ArrayList<>(starts.size());
+        for (Vertex start : starts) {
+            results.add(pool.submit(() -> traceUpstream(start)));
+        }
+        pool.shutdown();
+        try {
+            for (int i = 0; i < starts.size(); i++) {
+                traces.put(starts.get(i), results.get(i).get());
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new TraceException("Error tracing the unreachable nodes. " + ex.getMessage(), ex);
+        } finally {
+            pool.shutdownNow();
+        }
+        return traces;
+    }
+
+    /* Tarjan strongly connected components search over the source edges - ancestors finish before 
+       their descendants so each node's set is the union of its sources' sets, and every node in a 
+       cycle shares one set. Nodes already memoized, possibly by another trace, are not walked again */
+    private Set<Vertex> getUpstreamItems(Vertex start) {
+        Set<Vertex> known = upstreamItems.get(start);
+        if (known != null) return known;
+        HashMap<Vertex, Integer> index = new HashMap<>();
+        HashMap<Vertex, Integer> lowLink = new HashMap<>();
+        Deque<Vertex> component = new ArrayDeque<>();
+        Set<Vertex> onComponent = new HashSet<>();
+        Deque<Vertex> path = new ArrayDeque<>();
+        Deque<Iterator<Vertex>> pathSources = new ArrayDeque<>();
+        visit(start, index, lowLink, component, onComponent, path, pathSources);
+        while (!path.isEmpty()) {
+            Vertex v = path.peek();
+            Iterator<Vertex> sources = pathSources.peek();
+            if (sources.hasNext()) {
+                Vertex src = sources.next();
+                // the root node is not part of the trace as it is left out of the GraphML file
+                if (src.getOid().equals("root") || upstreamItems.containsKey(src)) continue;
+                if (!index.containsKey(src)) {
+                    visit(src, index, lowLink, component, onComponent, path, pathSources);
+                } else if (onComponent.contains(src)) {
+                    lowLink.put(v, Math.min(lowLink.get(v), index.get(src)));
+                }
+                continue;
+            }
+            path.pop();
+            pathSources.pop();
+            if (!path.isEmpty()) {
+                Vertex parent = path.peek();
+                lowLink.put(parent, Math.min(lowLink.get(parent), lowLink.get(v)));
+            }
+            if (lowLink.get(v).equals(index.get(v))) {
+                Set<Vertex> members = new HashSet<>();
+                Vertex member;
+                do {
+                    member = component.pop();
+                    onComponent.remove(member);
+                    members.add(member);
+                } while (member != v);
+                memoizeComponent(members);
+            }
+        }
+        return upstreamItems.get(start);
+    }
+
+    /* assign the next search index to a node and push it on the search path */
+    private void visit(Vertex v, HashMap<Vertex, Integer> index, HashMap<Vertex, Integer> lowLink, 
+            Deque<Vertex> component, Set<Vertex> onComponent, Deque<Vertex> path, Deque<Iterator<Vertex>> pathSources) {
+        index.put(v, index.size());
+        lowLink.put(v, index.get(v));
+        component.push(v);
+        onComponent.add(v);
+        path.push(v);
+        pathSources.push(v.getSource().iterator());
+    }
+
+    /* combine the upstream ItemDefs of the sources of a finished component and memoize them for each member */
+    private void memoizeComponent(Set<Vertex> members) {
+        Set<Vertex> items = new HashSet<>();
+        Set<Vertex> shared = null;
+        int sourceCount = 0;
+        boolean cyclic = members.size() > 1;
+        for (Vertex m : members) {
+            for (Vertex src : m.getSource()) {
+                if (src.getOid().equals("root")) continue;
+                if (members.contains(src)) {
+                    cyclic = true;
+                    continue;
+                }
+                sourceCount++;
+                if (src.getOdmElementType().equals("ItemDef")) items.add(src);
+                shared = upstreamItems.get(src);
+                items.addAll(shared);
+            }
+        }
+        if (cyclic) {
+            for (Vertex m : members) {
+                if (m.getOdmElementType().equals("ItemDef")) items.add(m);
+            }
+        }
+        // a node with a single source that is not an ItemDef shares the set of that source
+        Set<Vertex> upstream = (!cyclic && sourceCount == 1 && items.size() == shared.size()) 
+                ? shared : Collections.unmodifiableSet(items);
+        for (Vertex m : members) {
+            upstreamItems.putIfAbsent(m, upstream);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017 Sam Hume.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tracexml;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.Namespace;
+import org.jdom2.input.StAXStreamBuilder;
+
+/**
+ * StaxMetadataReader streams an ODM-XML or Define-XML file and keeps only the MetaDataVersion
+ * definitions needed to build the graph. Each kept definition is materialized as a small detached
+ * element, stripped of the child content the graph does not use, and added to an OidIndex. All other
+ * content (e.g. CodeLists, CommentDefs, leaf references) is skipped without building a document tree.
+ * References between definitions are resolved by the graph builders after the end of the document.
+ * @version 0.1
+ */
+public class StaxMetadataReader {
+    // child content used by the graph builders - everything else is dropped from the kept definitions
+    private static final Set<String> USED_CHILDREN = new HashSet<>(Arrays.asList(
+            "Description", "ItemRef", "ItemGroupRef", "Origin", "ValueListRef"));
+    private final Set<String> keepElements;
+    private final String walkElement;
+    private final OidIndex mdvIndex = new OidIndex();
+    private final List<Element> walkList = new ArrayList<>();
+    private Namespace ons;    // ODM namespace
+
+    /**
+     * StaxMetadataReader constructor
+     * @param keepElements Set of MetaDataVersion child element names to keep (e.g. ItemDef, MethodDef)
+     * @param walkElement String element name of the definitions the graph walk starts from (e.g. ItemGroupDef)
+     */
+    public StaxMetadataReader(Set<String> keepElements, String walkElement) {
+        this.keepElements = new HashSet<>(keepElements);
+        this.walkElement = walkElement;
+        this.keepElements.add(walkElement);
+    }
+
+    /**
+     * read streams the XML file and loads the kept definitions into the OID index
+     * @param fileName String containing the path and filename of the ODM-XML or Define-XML file
+     * @throws IOException if the file cannot be opened or read
+     * @throws XMLStreamException if the file is not well-formed XML
+     * @throws JDOMException if a kept definition cannot be built
+     */
+    public void read(String fileName) throws IOException, XMLStreamException, JDOMException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        StAXStreamBuilder builder = new StAXStreamBuilder();
+        try (InputStream input = new BufferedInputStream(new FileInputStream(fileName))) {
+            XMLStreamReader reader = factory.createXMLStreamReader(input);
+            try {
+                readMetaDataVersion(reader, builder);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /* walk the event stream keeping the needed children of the first Study/MetaDataVersion */
+    private void readMetaDataVersion(XMLStreamReader reader, StAXStreamBuilder builder) throws XMLStreamException, JDOMException {
+        int depth = 0;
+        int mdvDepth = -1;
+        int event = reader.getEventType();
+        while (true) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String localName = reader.getLocalName();
+                if (depth == 1) {
+                    ons = Namespace.getNamespace(reader.getPrefix() == null ? "" : reader.getPrefix(), reader.getNamespaceURI());
+                } else if (depth == 3 && mdvDepth == -1 && "MetaDataVersion".equals(localName)) {
+                    mdvDepth = depth;
+                } else if (mdvDepth > 0 && depth == mdvDepth + 1 && keepElements.contains(localName)) {
+                    // the builder consumes the definition and leaves the reader on the following event
+                    Element def = (Element) builder.fragment(reader);
+                    depth--;
+                    keepDefinition(def);
+                    event = reader.getEventType();
+                    continue;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == mdvDepth) {
+                    // only the first MetaDataVersion is used
+                    mdvDepth = -2;
+                }
+                depth--;
+            }
+            if (!reader.hasNext()) break;
+            event = reader.next();
+        }
+    }
+
+    /* strip unused content from a definition and add it to the index */
+    private void keepDefinition(Element def) {
+        Iterator<Element> children = def.getChildren().iterator();
+        while (children.hasNext()) {
+            if (!USED_CHILDREN.contains(children.next().getName())) {
+                children.remove();
+            }
+        }
+        mdvIndex.add(def);
+        if (def.getName().equals(walkElement)) {
+            walkList.add(def);
+        }
+    }
+
+    /**
+     * getter for the ODM namespace of the root element
+     * @return Namespace of the ODM root element
+     */
+    public Namespace getNamespace() {
+        return ons;
+    }
+
+    /**
+     * getter for the index of kept definitions
+     * @return OidIndex containing the kept MetaDataVersion definitions
+     */
+    public OidIndex getIndex() {
+        return mdvIndex;
+    }
+
+    /**
+     * getter for the definitions the graph walk starts from in document order
+     * @return List of walk elements (e.g. FormDef or ItemGroupDef)
+     */
+    public List<Element> getWalkList() {
+        return walkList;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2017 Sam Hume.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tracexml;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * TraceBatch runs the TraceEngine for several studies, one configuration file per study, on a bounded
+ * worker pool in one JVM. The studies share the compiled XSD schemas (ValidateXml) and XSLT templates
+ * (XsltTrace) cached by the first study that uses them. A study that fails is reported in the timing
+ * summary and does not stop the other studies. A study that would write an output file already written
+ * by an earlier study in the batch is not run. The xml-files.xml list used by the XQuery traces is not
+ * written as the engine traces in memory.
+ * @version 0.1
+ */
+public class TraceBatch {
+    private final List<String> cfgFileNames;
+    private final int poolSize;
+    private final Consumer<TraceConfig> options;
+
+    /**
+     * TraceBatch constructor
+     * @param cfgFileNames List of the configuration file path and filenames, one per study
+     * @param poolSize int maximum number of studies processed at the same time
+     * @param options Consumer that applies the command-line options to each study configuration
+     */
+    public TraceBatch(List<String> cfgFileNames, int poolSize, Consumer<TraceConfig> options) {
+        this.cfgFileNames = cfgFileNames;
+        this.poolSize = Math.max(1, poolSize);
+        this.options = options;
+    }
+
+    /**
+     * findConfigFiles returns the configuration files named by the batch command-line argument
+     * @param batch String directory containing the study .cfg files, or a comma separated list of configuration files
+     * @return List of the configuration file path and filenames, sorted by name when read from a directory
+     */
+    public static List<String> findConfigFiles(String batch) {
+        List<String> cfgFiles = new ArrayList<>();
+        File batchDir = new File(batch);
+        if (batchDir.isDirectory()) {
+            File[] files = batchDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".cfg"));
+            if (files != null) {
+                Arrays.sort(files);
+                for (File file : files) {
+                    cfgFiles.add(file.getPath());
+                }
+            }
+        } else {
+            for (String cfgFile : batch.split(",")) {
+                if (!cfgFile.trim().isEmpty()) cfgFiles.add(cfgFile.trim());
+            }
+        }
+        return cfgFiles;
+    }
+
+    /**
+     * run processes every study on the worker pool and waits for them to complete
+     * @return List of StudyTiming results in the order of the configuration files
+     */
+    public List<StudyTiming> run() {
+        List<StudyTiming> timings = new ArrayList<>(cfgFileNames.size());
+        if (cfgFileNames.isEmpty()) return timings;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(poolSize, cfgFileNames.size()));
+        List<Future<StudyTiming>> results = new ArrayList<>(cfgFileNames.size());
+        // output file path and the configuration file of the study that writes it
+        HashMap<String, String> outputFiles = new HashMap<>();
+        for (String cfgFileName : cfgFileNames) {
+            StudyTiming rejected = new StudyTiming(cfgFileName);
+            try {
+                TraceConfig config = TraceConfig.load(cfgFileName);
+                options.accept(config);
+                rejected.status = claimOutputFiles(config, cfgFileName, outputFiles);
+                if (rejected.status.isEmpty()) {
+                    results.add(pool.submit(() -> runStudy(cfgFileName, config)));
+                    continue;
+                }
+            } catch (TraceException ex) {
+                rejected.status = ex.getMessage();
+            }
+            results.add(CompletableFuture.completedFuture(rejected));
+        }
+        pool.shutdown();
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                timings.add(results.get(i).get());
+            } catch (InterruptedException | ExecutionException ex) {
+                StudyTiming failed = new StudyTiming(cfgFileNames.get(i));
+                failed.status = "Error: " + ex.getMessage();
+                timings.add(failed);
+            }
+        }
+        try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            pool.shutdownNow();
+        }
+        return timings;
+    }
+
+    /* record the output files of a study, returning an error if another study in the batch writes one of them */
+    private String claimOutputFiles(TraceConfig config, String cfgFileName, HashMap<String, String> outputFiles) {
+        List<String> studyFiles = new ArrayList<>();
+        studyFiles.add(config.getL3Graph());
+        if (!config.getNodesCsv().isEmpty() && !config.getEdgesCsv().isEmpty()) {
+            studyFiles.add(config.getNodesCsv());
+            studyFiles.add(config.getEdgesCsv());
+        }
+        if (!config.getUnreachableXsl().isEmpty() && !config.getUnreachableTextXsl().isEmpty()) {
+            studyFiles.add(config.getUnreachableHtml());
+            studyFiles.add(config.getUnreachableText());
+        }
+        List<String> paths = new ArrayList<>();
+        for (String studyFile : studyFiles) {
+            String path = new File(config.getXmlPath() + studyFile).getAbsolutePath();
+            if (outputFiles.containsKey(path)) {
+                return "Error: " + path + " is also written by " + outputFiles.get(path) + ". Study not run.";
+            }
+            paths.add(path);
+        }
+        for (String path : paths) {
+            outputFiles.put(path, cfgFileName);
+        }
+        return "";
+    }
+
+    /* build, analyze, and write the outputs for one study, recording the time taken by each step */
+    private StudyTiming runStudy(String cfgFileName, TraceConfig config) {
+        StudyTiming timing = new StudyTiming(cfgFileName);
+        long start = System.nanoTime();
+        try {
+            TraceEngine engine = new TraceEngine(config);
+            TraceResult result = engine.run();
+            long built = System.nanoTime();
+            timing.buildMillis = TimeUnit.NANOSECONDS.toMillis(built - start);
+            timing.nodes = result.getGraph().vertexCount();
+            timing.unexpected = result.getUnreachableReport().getUnexpected().size();
+            timing.expected = result.getUnreachableReport().getExpected().size();
+            engine.writeGraphML(result);
+            engine.writeCsvFiles(result);
+            engine.writeUnreachableReports(result);
+            timing.outputMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - built);
+            timing.status = "OK";
+        } catch (TraceException ex) {
+            timing.status = ex.getMessage();
+        }
+        timing.totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return timing;
+    }
+
+    /**
+     * printSummary prints a tab delimited summary of the study timings to the console
+     * @param timings List of StudyTiming results returned by run
+     * @param elapsedMillis long elapsed time of the whole batch in milliseconds
+     */
+    public static void printSummary(List<StudyTiming> timings, long elapsedMillis) {
+        System.out.println("Study\tNodes\tUnexpected\tExpected\tBuild ms\tOutput ms\tTotal ms\tStatus");
+        for (StudyTiming timing : timings) {
+            System.out.println(timing.cfgFileName + "\t" + timing.nodes + "\t" + timing.unexpected + "\t" + timing.expected 
+                    + "\t" + timing.buildMillis + "\t" + timing.outputMillis + "\t" + timing.totalMillis + "\t" + timing.status);
+        }
+        System.out.println(timings.size() + " studies processed in " + elapsedMillis + " ms");
+    }
+
+    /**
+     * StudyTiming holds the node counts and step timings of one study in the batch
+     */
+    public static class StudyTiming {
+        private final String cfgFileName;
+        private int nodes;
+        private int unexpected;
+        private int expected;
+        private long buildMillis;
+        private long outputMillis;
+        private long totalMillis;
+        private String status = "";
+
+        StudyTiming(String cfgFileName) {
+            this.cfgFileName = cfgFileName;
+        }
+
+        public String getCfgFileName() {
+            return cfgFileName;
+        }
+
+        public int getNodes() {
+            return nodes;
+        }
+
+        public int getUnexpected() {
+            return unexpected;
+        }
+
+        public int getExpected() {
+            return expected;
+        }
+
+        public long getBuildMillis() {
+            return buildMillis;
+        }
+
+        public long getOutputMillis() {
+            return outputMillis;
+        }
+
+        public long getTotalMillis() {
+            return totalMillis;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+    }
+}
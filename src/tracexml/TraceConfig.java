@@ -0,0 +1,278 @@
+/*
+ * Copyright 2017 Sam Hume.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tracexml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * TraceConfig holds the configuration of one study for a TraceEngine: the ODM-XML and Define-XML
+ * files, the schemas, the output files and the build options. It is loaded from a Trace-XML config
+ * file or Properties, or set up directly by an embedding application. Each engine reads its own
+ * TraceConfig, which must not be changed while the engine is running.
+ * @version 0.1
+ */
+public class TraceConfig {
+    private String xmlPath = "";
+    private String l3Graph = "";
+    private String dataCollection = "";
+    private String dataTabulation = "";
+    private String dataAnalysis = "";
+    private String odmXsdFile = "";
+    private String defineXsdFile = "";
+    private String nodesCsv = "";
+    private String edgesCsv = "";
+    private String unreachableXsl = "";
+    private String unreachableHtml = "";
+    private String unreachableTextXsl = "";
+    private String unreachableText = "";
+    private boolean fixInvalidByte1;
+    private boolean yedExtensions;
+    private boolean streaming;
+    private boolean parallel;
+    private boolean validate;
+    private boolean verbose;
+
+    /**
+     * TraceConfig constructor for a configuration set up with the setters
+     */
+    public TraceConfig() {
+    }
+
+    /**
+     * TraceConfig constructor reads the Trace-XML configuration properties
+     * @param prop Properties loaded from a Trace-XML config file
+     */
+    public TraceConfig(Properties prop) {
+        xmlPath = prop.getProperty("xml-path", "");
+        l3Graph = prop.getProperty("L3-graph", "");
+        dataCollection = prop.getProperty("data-collection-file", "");
+        dataTabulation = prop.getProperty("data-tabulation-file", "");
+        dataAnalysis = prop.getProperty("data-analysis-file", "");
+        odmXsdFile = prop.getProperty("odm-xsd-file", "");
+        defineXsdFile = prop.getProperty("define-xsd-file", "");
+        nodesCsv = prop.getProperty("nodes-csv", "");
+        edgesCsv = prop.getProperty("edges-csv", "");
+        unreachableXsl = prop.getProperty("unreachable-xsl", "");
+        unreachableHtml = prop.getProperty("unreachable-html", "");
+        unreachableTextXsl = prop.getProperty("unreachable-text-xsl", "");
+        unreachableText = prop.getProperty("unreachable-text", "");
+        fixInvalidByte1 = "Yes".equalsIgnoreCase(prop.getProperty("fix-invalid-byte-1"));
+    }
+
+    /**
+     * load reads a Trace-XML config file
+     * @param cfgFileName String path and filename of the config file
+     * @return TraceConfig with the properties of the config file
+     * @throws TraceException if the config file cannot be found or read
+     */
+    public static TraceConfig load(String cfgFileName) throws TraceException {
+        Properties prop = new Properties();
+        try (InputStream input = new FileInputStream(cfgFileName)) {
+            prop.load(input);
+        } catch (FileNotFoundException ex) {
+            throw new TraceException("Configuration file not found: " + cfgFileName, ex);
+        } catch (IOException ex) {
+            throw new TraceException("Unable to load the configuration file " + cfgFileName + ". " + ex.toString(), ex);
+        }
+        return new TraceConfig(prop);
+    }
+
+    /**
+     * getter for the directory of the generated files
+     * @return String path ending in a file separator, or an empty string
+     */
+    public String getXmlPath() {
+        if (xmlPath.isEmpty() || xmlPath.endsWith(File.separator)) {
+            return xmlPath;
+        }
+        return xmlPath + File.separator;
+    }
+
+    public void setXmlPath(String xmlPath) {
+        this.xmlPath = xmlPath;
+    }
+
+    public String getL3Graph() {
+        return l3Graph;
+    }
+
+    public void setL3Graph(String l3Graph) {
+        this.l3Graph = l3Graph;
+    }
+
+    public String getDataCollection() {
+        return dataCollection;
+    }
+
+    public void setDataCollection(String dataCollection) {
+        this.dataCollection = dataCollection;
+    }
+
+    public String getDataTabulation() {
+        return dataTabulation;
+    }
+
+    public void setDataTabulation(String dataTabulation) {
+        this.dataTabulation = dataTabulation;
+    }
+
+    public String getDataAnalysis() {
+        return dataAnalysis;
+    }
+
+    public void setDataAnalysis(String dataAnalysis) {
+        this.dataAnalysis = dataAnalysis;
+    }
+
+    public String getOdmXsdFile() {
+        return odmXsdFile;
+    }
+
+    public void setOdmXsdFile(String odmXsdFile) {
+        this.odmXsdFile = odmXsdFile;
+    }
+
+    public String getDefineXsdFile() {
+        return defineXsdFile;
+    }
+
+    public void setDefineXsdFile(String defineXsdFile) {
+        this.defineXsdFile = defineXsdFile;
+    }
+
+    public String getNodesCsv() {
+        return nodesCsv;
+    }
+
+    public void setNodesCsv(String nodesCsv) {
+        this.nodesCsv = nodesCsv;
+    }
+
+    public String getEdgesCsv() {
+        return edgesCsv;
+    }
+
+    public void setEdgesCsv(String edgesCsv) {
+        this.edgesCsv = edgesCsv;
+    }
+
+    /**
+     * Style sheet for the unreachable node report
+     * @return String XSL filename in the xml-path directory used to create the unreachable html
+     */
+    public String getUnreachableXsl() {
+        return unreachableXsl;
+    }
+
+    public void setUnreachableXsl(String unreachableXsl) {
+        this.unreachableXsl = unreachableXsl;
+    }
+
+    public String getUnreachableHtml() {
+        return unreachableHtml;
+    }
+
+    public void setUnreachableHtml(String unreachableHtml) {
+        this.unreachableHtml = unreachableHtml;
+    }
+
+    public String getUnreachableTextXsl() {
+        return unreachableTextXsl;
+    }
+
+    public void setUnreachableTextXsl(String unreachableTextXsl) {
+        this.unreachableTextXsl = unreachableTextXsl;
+    }
+
+    public String getUnreachableText() {
+        return unreachableText;
+    }
+
+    public void setUnreachableText(String unreachableText) {
+        this.unreachableText = unreachableText;
+    }
+
+    /**
+     * @return true to repair characters that are not allowed in XML as the GraphML file is written
+     */
+    public boolean isFixInvalidByte1() {
+        return fixInvalidByte1;
+    }
+
+    public void setFixInvalidByte1(boolean fixInvalidByte1) {
+        this.fixInvalidByte1 = fixInvalidByte1;
+    }
+
+    /**
+     * @return true to add the yEd graph editor extensions to the GraphML file
+     */
+    public boolean isYedExtensions() {
+        return yedExtensions;
+    }
+
+    public void setYedExtensions(boolean yedExtensions) {
+        this.yedExtensions = yedExtensions;
+    }
+
+    /**
+     * @return true to stream the ODM-XML and Define-XML files with StAX instead of loading full documents
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * @return true to build the ItemGroupDefs within each Define-XML file concurrently
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * @return true to schema validate the ODM-XML and Define-XML files before building the graph
+     */
+    public boolean isValidate() {
+        return validate;
+    }
+
+    public void setValidate(boolean validate) {
+        this.validate = validate;
+    }
+
+    /**
+     * @return true to print additional feedback on the graph build and the unreachable nodes to the console
+     */
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2017 Sam Hume.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tracexml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * TraceEngine builds and analyzes the traceability graph for one study. It can be embedded in other
+ * applications as it keeps no static state and reports errors with TraceException instead of
+ * exiting the process. Each engine works from its own TraceConfig and returns a TraceResult, so
+ * engines for different studies can run concurrently in one JVM. Tracexml is the command-line
+ * front end to the engine. Console diagnostics follow the verbose option of the TraceConfig, which
+ * is off by default.
+ * @version 0.1
+ */
+public class TraceEngine {
+    private final TraceConfig config;
+
+    /**
+     * TraceEngine constructor
+     * @param config TraceConfig with the study files, output files and options
+     */
+    public TraceEngine(TraceConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * run builds the graph from the ODM-XML and Define-XML files, finds the nodes reachable from
+     * the root, and re-tests the unreachable nodes to separate the expected from the unexpected
+     * @return TraceResult with the graph, reachability and unreachable node report
+     * @throws TraceException if a metadata file is missing, fails validation, or cannot be read
+     */
+    public TraceResult run() throws TraceException {
+        TreeMap<String, Vertex> metadata = getMetadataFiles();
+        if (config.isValidate()) validateXmlFiles();
+        Digraph graph = new Digraph();
+        processMetadataFiles(graph, metadata);
+        graph.connectRootNode();
+        CsrGraph frozenGraph = graph.freeze();
+        DFS reachability = new DFS(frozenGraph, "root");
+        BitSet reachable = reachability.reachable();
+        UnreachableReport report = new UnreachableReport();
+        genUnreachableList(graph, reachability, report);
+        return new TraceResult(graph, frozenGraph, reachable, reachability, report);
+    }
+
+    /**
+     * writeGraphML writes the GraphML file named by the L3-graph option in the xml-path directory
+     * @param result TraceResult of a run of this engine
+     * @throws TraceException if the GraphML file cannot be written
+     */
+    public void writeGraphML(TraceResult result) throws TraceException {
+        String graphMLFileName = config.getXmlPath() + config.getL3Graph();
+        CdiscGraphML graphML = new CdiscGraphML(graphMLFileName, config.isYedExtensions());
+        graphML.setFixInvalidByte(config.isFixInvalidByte1());
+        try {
+            graphML.writeGraphML(result.getFrozenGraph());
+        } catch (IOException ex) {
+            throw new TraceException("Error writing the GraphML file " + graphMLFileName + ". " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * writeCsvFiles writes the node and edge CSV files for graph database bulk loaders, if both are named
+     * by the nodes-csv and edges-csv options
+     * @param result TraceResult of a run of this engine
+     * @throws TraceException if the CSV files cannot be written
+     */
+    public void writeCsvFiles(TraceResult result) throws TraceException {
+        if (config.getNodesCsv().isEmpty() || config.getEdgesCsv().isEmpty()) return;
+        String nodesCsv = config.getXmlPath() + config.getNodesCsv();
+        String edgesCsv = config.getXmlPath() + config.getEdgesCsv();
+        try {
+            new GraphExport(result.getFrozenGraph()).export(Arrays.asList(new CsvGraphExporter(nodesCsv, edgesCsv)));
+        } catch (IOException ex) {
+            throw new TraceException("Error writing the CSV files " + nodesCsv + " and " + edgesCsv + ". " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * writeUnreachableReports writes the html and text unreachable node reports named by the unreachable-html
+     * and unreachable-text options, if any nodes are unreachable
+     * @param result TraceResult of a run of this engine
+     */
+    public void writeUnreachableReports(TraceResult result) {
+        UnreachableReport report = result.getUnreachableReport();
+        if (report.isEmpty() || config.getUnreachableXsl().isEmpty() || config.getUnreachableTextXsl().isEmpty()) return;
+        String textXslFileName = config.getXmlPath() + config.getUnreachableTextXsl();
+        String textFileName = config.getXmlPath() + config.getUnreachableText();
+        // create the text file while the html file is created from the same report
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<?> textReport = pool.submit(() -> new XsltTrace(report.toSource(), textXslFileName).transformXMLFile(textFileName));
+        pool.shutdown();
+        XsltTrace xslTrace = new XsltTrace(report.toSource(), config.getXmlPath() + config.getUnreachableXsl());
+        xslTrace.transformXMLFile(config.getXmlPath() + config.getUnreachableHtml());
+        try {
+            textReport.get();
+        } catch (InterruptedException | ExecutionException ex) {
+            System.out.println("Error generating the text list of unreachable nodes. " + ex.getMessage());
+        }    
+    }
+
+    /**
+     * getMetadataFiles creates the ordered set of XML files to use to generate the graph 
+     * @return TreeMap containing the ordered set of XML files with a life-cycle phase key
+     * @throws TraceException if one of the metadata files is not configured or not found
+     */
+    public TreeMap<String, Vertex> getMetadataFiles() throws TraceException {
+        checkForMetadataFiles();
+        TreeMap<String, Vertex> vMap = new TreeMap<>();
+        // set data collection node    
+        Vertex dcNode = new Vertex(Phase.DATA_COLLECTION_PHASE);
+        dcNode.setFileName(config.getDataCollection());
+        dcNode.setPhase(Phase.DATA_COLLECTION_PHASE);
+        dcNode.setDescription(Phase.DATA_COLLECTION_PHASE_DESC);
+        vMap.put(Phase.DATA_COLLECTION_PHASE_ORDER, dcNode);
+        // set data tabulation node    
+        Vertex dtNode = new Vertex("data-tabulation");
+        dtNode.setFileName(config.getDataTabulation());
+        dtNode.setPhase(Phase.TABULATION_PHASE);
+        dtNode.setDescription(Phase.TABULATION_PHASE_DESC);
+        vMap.put(Phase.TABULATION_PHASE_ORDER, dtNode);
+        // set data analysis node    
+        Vertex daNode = new Vertex("data-analysis");
+        daNode.setFileName(config.getDataAnalysis());
+        daNode.setPhase(Phase.ANALYSIS_PHASE);
+        daNode.setDescription(Phase.ANALYSIS_PHASE_DESC);
+        vMap.put(Phase.ANALYSIS_PHASE_ORDER, daNode);
+        return vMap;
+    }        
+
+    /* generate unreachable nodes and categorize these as expected or unexpected
+       based on the associate value in Origin     */
+    private void genUnreachableList(Digraph graph, DFS reachability, UnreachableReport report) throws TraceException {
+        List<Vertex> retestUnreached = new ArrayList<>();
+        for (Vertex node : reachability.unmarkedVertices()) {
+            if (Origin.isOriginTraceable(node.getOriginType())) {
+                retestUnreached.add(node);
+            } else {
+                report.addExpected(node); 
+            }    
+        }
+        checkUnreachableNodes(graph, reachability, report, retestUnreached); 
+    }
+
+    /* re-test unreachable nodes to determine if there is an expected reason explainng 
+    why a node is unreachable, or if the node appears to be unreachable in error */
+    private void checkUnreachableNodes(Digraph graph, DFS reachability, UnreachableReport report, List<Vertex> testList) 
+            throws TraceException {
+        // generate the graph segments to test by tracing the sources of the nodes in memory
+        LinkedHashMap<Vertex, Set<Vertex>> traces = new SourceTrace(graph).runTraces(testList);
+        for (Set<Vertex> untraced : traces.values()) {
+            for (Vertex node : untraced) {
+                // if the root of the fragment is expected to be untraceable then connect this 
+                // node to the root to make traceable during re-test - each node is connected once
+                if (!Origin.isOriginTraceable(node.getOriginType()) && report.addToRoot(node)) {
+                    graph.connectNodeToRoot(node.getOid()); 
+                    reachability.connectToStart(node.getOid());
+                } 
+            }
+        }
+        reTestUnreachablesForOrphans(reachability, report);
+    }
+
+    /* runs the re-test trace for graph fragments that are expected to be traceable
+    to determine if the trace terminates in an accepted way or if the node is orphaned */
+    private void reTestUnreachablesForOrphans(DFS reachability, UnreachableReport report) {
+        // the reachability was updated in memory as each node was connected to the root
+        for (Vertex node : reachability.unmarkedVertices()) {
+            if (Origin.isOriginTraceable(node.getOriginType())) {
+                report.addUnexpected(node);
+            } else {
+                // nodes that are already in the report are not added again
+                report.addExpected(node);
+            }    
+        }        
+    }
+
+    /* build the graph using content from each ODM-XML and Define-XML file - each phase is built 
+       in its own graph on its own thread and the phase graphs are merged in life-cycle phase order */
+    private void processMetadataFiles(Digraph graph, TreeMap<String, Vertex> metadata) throws TraceException {
+        TreeMap<String, Future<Digraph>> phaseGraphs = new TreeMap<>();
+        List<DefineGraph> defGraphs = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(metadata.size());
+        try {
+            for (String key : metadata.keySet()) {
+                Callable<Digraph> phaseBuild = getPhaseGraphBuild(metadata.get(key), defGraphs);
+                if (phaseBuild != null) phaseGraphs.put(key, pool.submit(phaseBuild));
+            }
+            pool.shutdown();
+            for (String key : phaseGraphs.keySet()) {
+                graph.merge(phaseGraphs.get(key).get());
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof TraceException) throw (TraceException) ex.getCause();
+            throw new TraceException("Error building the graph from the metadata files. " + ex.getMessage(), ex);
+        } catch (InterruptedException ex) {
+            throw new TraceException("Error building the graph from the metadata files. " + ex.getMessage(), ex);
+        } finally {
+            pool.shutdownNow();
+        }
+        // sources in an earlier phase (e.g. TraceItems) are resolved after all phases are merged
+        for (DefineGraph defGraph : defGraphs) {
+            defGraph.resolveMissingNodes(graph);
+        }
+    }
+
+    /* returns the task that builds the graph for a life-cycle phase, or null if the phase is not implemented */
+    private Callable<Digraph> getPhaseGraphBuild(Vertex phaseMetadata, List<DefineGraph> defGraphs) {
+        Callable<Digraph> phaseBuild = null;
+        String nodePhase = phaseMetadata.getPhase();
+        switch (nodePhase) {
+            case Phase.EHR_PHASE:
+                if (config.isVerbose()) 
+                    System.out.println("Warning: EHR graph not yet implemented (TraceEngine.processMetadataFiles).");
+                break;
+            case Phase.DATA_COLLECTION_PHASE:
+                if (config.isVerbose()) 
+                    System.out.println("building graph from DATA_COLLECTION metadata...");
+                phaseBuild = () -> {
+                    Digraph phaseGraph = new Digraph();
+                    ODMGraph odmGraph = new ODMGraph();
+                    odmGraph.setVerbose(config.isVerbose());
+                    if (config.isStreaming()) {
+                        odmGraph.streamODMGraph(phaseGraph, phaseMetadata);
+                    } else {
+                        odmGraph.buildODMGraph(phaseGraph, phaseMetadata);
+                    }
+                    return phaseGraph;
+                };
+                break;
+            case Phase.TABULATION_PHASE:   
+                if (config.isVerbose()) 
+                    System.out.println("building graph from TABULATION metadata...");
+                phaseBuild = getDefGraphBuild(phaseMetadata, defGraphs);
+                break;
+            case Phase.ANALYSIS_PHASE:   
+                if (config.isVerbose()) 
+                    System.out.println("building graph from ANALYSIS metadata...");
+                phaseBuild = getDefGraphBuild(phaseMetadata, defGraphs);
+                break;
+            case Phase.ANALYSIS_RESULTS_PHASE:
+                if (config.isVerbose()) 
+                    System.out.println("Warning: Analysis results graph not yet implemented (TraceEngine.processMetadataFiles).");
+                break;
+            default:
+                System.out.println("Warning: unknown lifecycle phase: " + phaseMetadata.getPhase());
+                break;
+        }
+        return phaseBuild;
+    }
+
+    /* build the Define-XML graph for a phase using the selected parsing mode */
+    private Callable<Digraph> getDefGraphBuild(Vertex phaseMetadata, List<DefineGraph> defGraphs) {
+        DefineGraph defGraph = new DefineGraph(true);
+        defGraph.setParallelBuild(config.isParallel());
+        defGraph.setVerbose(config.isVerbose());
+        defGraphs.add(defGraph);
+        return () -> {
+            Digraph phaseGraph = new Digraph();
+            if (config.isStreaming()) {
+                defGraph.streamDefGraph(phaseGraph, phaseMetadata);
+            } else {
+                defGraph.buildDefGraph(phaseGraph, phaseMetadata);
+            }
+            return phaseGraph;
+        };
+    }
+
+    /* ensure each of the expected metadata files can be found */
+    private void checkForMetadataFiles() throws TraceException {
+        checkMetadataFileFound(config.getDataCollection(), "Error: Missing ODM data collection file in configuration file or the file listed is not found.");
+        checkMetadataFileFound(config.getDataTabulation(), "Error: Missing SDTM Define-XML file in configuration file or the file listed is not found.");
+        checkMetadataFileFound(config.getDataAnalysis(), "Error: Missing ADaM Define-XML file in configuration file or the file listed is not found.");
+    }
+    
+    /* performs the actual test to ensure the metadata files can be found */
+    private void checkMetadataFileFound(String metadataFileName, String missingFileMsg) throws TraceException {
+        if (metadataFileName.isEmpty() ||  !(new File(metadataFileName).isFile())) {
+            throw new TraceException(missingFileMsg);
+        }
+    }
+    
+    /* schema validate the metadata files that have a schema configured */
+    private void validateXmlFiles() throws TraceException {
+        schemaValidateXMLFile(config.getOdmXsdFile(), config.getDataCollection());
+        schemaValidateXMLFile(config.getDefineXsdFile(), config.getDataTabulation());
+        schemaValidateXMLFile(config.getDefineXsdFile(), config.getDataAnalysis());
+    }        
+     
+    /* calls the schema validation method for a given XML file */
+    private void schemaValidateXMLFile(String xsdFile, String xmlFile) throws TraceException {
+        if (!xsdFile.isEmpty() && (new File(xsdFile).isFile())) {
+            if (!ValidateXml.validate(xmlFile, xsdFile, config.isVerbose())) {
+                throw new TraceException(xmlFile + " failed schema validation with " + xsdFile);
+            }    
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 Sam Hume.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tracexml;
+
+/**
+ * TraceException is thrown by the TraceEngine in place of exiting the process when a study cannot
+ * be loaded, built, traced or written, so an embedding application can report the error and continue.
+ * @version 0.1
+ */
+public class TraceException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * TraceException constructor
+     * @param message String describing the error
+     */
+    public TraceException(String message) {
+        super(message);
+    }
+
+    /**
+     * TraceException constructor
+     * @param message String describing the error
+     * @param cause Throwable that caused the error
+     */
+    public TraceException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 Sam Hume.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tracexml;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * TraceResult holds the outcome of a TraceEngine run for one study: the graph built from the
+ * ODM-XML and Define-XML files, its frozen copy, the reachability from the root, and the unreachable
+ * node report. Upstream traces for any node are answered from the in-memory graph. A TraceResult is
+ * not changed after the run completes, so it can be read and traced from several threads.
+ * @version 0.1
+ */
+public class TraceResult {
+    private final Digraph graph;
+    private final CsrGraph frozenGraph;
+    private final BitSet reachable;
+    private final DFS reachability;
+    private final UnreachableReport unreachableReport;
+    private final SourceTrace sourceTrace;
+
+    /**
+     * TraceResult constructor
+     * @param graph Digraph built from the ODM-XML and Define-XML files, including the root connections made for the re-test
+     * @param frozenGraph CsrGraph frozen from the graph before the re-test
+     * @param reachable BitSet of the CsrGraph node ids reachable from the root before the re-test
+     * @param reachability DFS from the root updated with the nodes connected to the root for the re-test
+     * @param unreachableReport UnreachableReport with the results of the re-test
+     */
+    public TraceResult(Digraph graph, CsrGraph frozenGraph, BitSet reachable, DFS reachability, UnreachableReport unreachableReport) {
+        this.graph = graph;
+        this.frozenGraph = frozenGraph;
+        this.reachable = reachable;
+        this.reachability = reachability;
+        this.unreachableReport = unreachableReport;
+        this.sourceTrace = new SourceTrace(graph);
+    }
+
+    /**
+     * trace finds the upstream ItemDefs of a node in the graph
+     * @param nodeOID String of the starting node OID for the trace
+     * @return HashMap of the OIDs of the ItemDefs in the trace, excluding the start node, and their origin types
+     */
+    public HashMap<String, String> trace(String nodeOID) {
+        return sourceTrace.runTrace(nodeOID);
+    }
+
+    /**
+     * getReachableNodes lists the nodes reachable from the root before any node was connected to the root
+     * @return List of String OIDs of the reachable nodes in graph order
+     */
+    public List<String> getReachableNodes() {
+        List<String> reachableNodes = new ArrayList<>(reachable.cardinality());
+        for (int id = reachable.nextSetBit(0); id >= 0; id = reachable.nextSetBit(id + 1)) {
+            reachableNodes.add(frozenGraph.getOid(id));
+        }
+        return reachableNodes;
+    }
+
+    public Digraph getGraph() {
+        return graph;
+    }
+
+    public CsrGraph getFrozenGraph() {
+        return frozenGraph;
+    }
+
+    public DFS getReachability() {
+        return reachability;
+    }
+
+    public UnreachableReport getUnreachableReport() {
+        return unreachableReport;
+    }
+}
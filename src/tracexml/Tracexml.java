@@ -16,28 +16,29 @@
 package tracexml;
 import java.io.*;
 import java.net.URISyntaxException;
-import java.util.*;
+import java.util.List;
 
 /**
  *  Using the CDISC ODM-XML and Define-XML files for a full study Trace-XML uses 
  *  a Define-XML extension to generate a full life-cycle study graph that provides
  *  computable traceability. In addition to validating traceability, the Trace-XML
  *  graph can be used to query traces for a variable or to visualize traceability
- *  with a visual rendering of the graph.
+ *  with a visual rendering of the graph. Tracexml is the command-line front end to the
+ *  TraceEngine, which builds and analyzes the graph.
  *  @version 0.1
 */
 public class Tracexml {
-    private final List<String> nodesAddedToRoot = new LinkedList<>();
-    private static final Digraph traceGraph = new Digraph();
-    private final ODMGraph odmGraph = new ODMGraph();
-    private final DefineGraph defGraph = new DefineGraph();
-    private static String graphOutputFileName;
-    private static Boolean yEdExtensions = Boolean.FALSE;
-    private static Boolean isReachable = Boolean.FALSE;
-    private static Boolean isValidate = Boolean.FALSE;
-    private static Boolean isDisplay = Boolean.FALSE;
-    private static Boolean isUnreachable = Boolean.FALSE;
-    private static String cfgFileName;
+    private Boolean yEdExtensions = Boolean.FALSE;
+    private Boolean isReachable = Boolean.FALSE;
+    private Boolean isValidate = Boolean.FALSE;
+    private Boolean isDisplay = Boolean.FALSE;
+    private Boolean isUnreachable = Boolean.FALSE;
+    private Boolean isStreaming = Boolean.FALSE;
+    private Boolean isParallel = Boolean.FALSE;
+    private Boolean isVerbose = Boolean.FALSE;
+    private String cfgFileName;
+    private String batch;
+    private int threads = Runtime.getRuntime().availableProcessors();
     
     /** 
      * The Tracexml application takes the following command-line arguments:
@@ -47,204 +48,71 @@ public class Tracexml {
      * "reachable" lists reachable nodes to the console,
      * "yed" generates graphML extensions for the yEd graph editor,
      * "display" loads the unreachable nodes report into the browser,
+     * "stream" streams the ODM-XML and Define-XML files with StAX instead of loading full documents,
+     * "parallel" builds the ItemGroupDefs within each Define-XML file concurrently,
+     * "batch=path" processes every study .cfg file in a directory, or a comma separated list of .cfg files, concurrently,
+     * "threads=n" maximum number of studies a batch processes at the same time,
      * "verbose" requests that the application provide additional feedback to the user,
      * "help" requests that the program display the application usage options
     */
     public static void main(String[] args) {
         Tracexml trace = new Tracexml();
         // default configuration file path and file name
-        cfgFileName = trace.getConfigFileDir() + "trace-xml.cfg";
-        ConfigReader.setVerbose(Boolean.FALSE);        
+        trace.cfgFileName = trace.getConfigFileDir() + "trace-xml.cfg";
         /* process command line arguments */
         trace.setCommandLineOptions(args);
-        /* load the configuration file options */
-        trace.loadConfiguration(cfgFileName);        
-        /* read the metadata files */
-        //TreeMap<String, Vertex> metadata = trace.readMetadataFiles();
-        /* schema validate the XML files */
-        if (isValidate) trace.validateXmlFiles();        
-        /* generate connected graphs from the ODM or Define-XML files containing the metadata */
-        trace.processMetadataFiles(trace.readMetadataFiles());
-        /* add a root node */
-        traceGraph.connectRootNode();
-        /* test for reachability within the new graph */
-        if (isReachable) trace.runReachabilityCheck();
-        /* write the graph to a graphml file */
-        trace.genGraphMLFile();
-        /* show the unreachable nodes in the graph */
-        trace.genUnreachableList();
+        if (trace.batch != null) {
+            trace.runBatch();
+            return;
+        }
+        try {
+            /* load the configuration file options */
+            TraceConfig config = trace.loadConfiguration(trace.cfgFileName);
+            TraceEngine engine = new TraceEngine(config);
+            /* save the metadata files for use with XQueries */
+            Display.writeXmlFileList(engine.getMetadataFiles(), config.getXmlPath());
+            /* schema validate the XML files, generate the connected graph, and re-test the unreachable nodes */
+            TraceResult result = engine.run();
+            /* show the nodes that were reachable within the new graph */
+            if (trace.isReachable) trace.runReachabilityCheck(result);
+            /* write the graph to a graphml file once the graph is complete */
+            engine.writeGraphML(result);
+            engine.writeCsvFiles(result);
+            /* report the unreachable nodes in the graph */
+            engine.writeUnreachableReports(result);
+            trace.showUnreachableList(result, config);
+        } catch (TraceException ex) {
+            System.out.println(ex.getMessage());
+            System.exit(0);
+        }
+    }
+
+    /* process the batch of studies and print the timing summary */
+    private void runBatch() {
+        List<String> cfgFiles = TraceBatch.findConfigFiles(batch);
+        if (cfgFiles.isEmpty()) {
+            System.out.println("No configuration files found for batch " + batch);
+            return;
+        }
+        long start = System.nanoTime();
+        List<TraceBatch.StudyTiming> timings = new TraceBatch(cfgFiles, threads, this::applyOptions).run();
+        TraceBatch.printSummary(timings, (System.nanoTime() - start) / 1000000L);
     }
 
     /* show all reachable nodes in the graph */
-    private void runReachabilityCheck() {
-        DFS reachable = new DFS(traceGraph, "root");
+    private void runReachabilityCheck(TraceResult result) {
         // TODO provide alternative ways of communicating reachable nodes
         System.out.println("Reachable nodes are:");
-        for (String node : reachable.marked()) {
+        for (String node : result.getReachableNodes()) {
             System.out.println(node);
         }
     }
-    
-    /* generate unreachable nodes and categorize these as expected or unexpected
-       based on the associate value in Origin     */
-    private void genUnreachableList() {
-        DFS reachable = new DFS(traceGraph, "root");
-        HashMap<String, String> unreached = reachable.unmarked();
-        List<String> expectedUnreached = new ArrayList<>();
-        List<String> retestUnreached = new ArrayList<>();
-        for (String node : unreached.keySet()) {
-            String origin = unreached.get(node);
-            if (Origin.isOriginTraceable(origin)) {
-                retestUnreached.add(node);
-            } else {
-                expectedUnreached.add(node + " (" + origin + ")"); 
-            }    
-        }
-        List<String> unreachable = checkUnreachableNodes(retestUnreached, expectedUnreached); 
-        if ((unreachable.size() + expectedUnreached.size()) > 0) 
-            Display.showUnreachables(nodesAddedToRoot, unreachable, expectedUnreached, isDisplay, isUnreachable);        
-    }
-    
-    /* re-test unreachable nodes to determine if there is an expected reason explainng 
-    why a node is unreachable, or if the node appears to be unreachable in error */
-    private List<String> checkUnreachableNodes(List<String> testList, List<String> expectedList) {
-        TraceNode trc = new TraceNode();
-        for (String testOID : testList) {
-            // generate a graph segment to test by running a query using RunTrace
-            HashMap<String, String> untraced = trc.RunTrace(testOID);
-            for (String oid : untraced.keySet()) {
-                String origin = untraced.get(oid);
-                // if the root of the fragment is expected to be untraceable 
-                if (!(Origin.isOriginTraceable(origin))) {
-                    // then connect this node to the root to make traceable during re-test
-                    traceGraph.connectNodeToRoot(oid); 
-                    nodesAddedToRoot.add(oid);
-                } 
-            }
-        }
-        return reTestUnreachablesForOrphans(expectedList);
-    }
 
-    /* runs the re-test trace for graph fragments that are expected to be traceable
-    to determine if the trace terminates in an accepted way or if the node is orphaned */
-    private List<String> reTestUnreachablesForOrphans(List<String> expectedList) {
-        List<String> orphans = new LinkedList<>();
-        genGraphMLFile();  // re-generate the graph
-        DFS reachable = new DFS(traceGraph, "root");
-        HashMap<String, String> unreached = reachable.unmarked();
-        for (String node : unreached.keySet()) {
-            String origin = unreached.get(node);
-            if (Origin.isOriginTraceable(origin)) {
-                orphans.add(node + " (" + origin + ")");
-            } else {
-                // don't add nodes that are already on the list
-                if (!expectedList.contains(node + " (" + origin + ")")) {
-                    expectedList.add(node + " (" + origin + ")");
-                }
-            }    
-        }        
-        return orphans;
-    }
-
-    /* generate the GraphML file from the internal graph created from the XML files */
-    private void genGraphMLFile() {
-        CdiscGraphML graphML = new CdiscGraphML(graphOutputFileName, yEdExtensions);    
-        graphML.createGraphMLOutput(traceGraph);
-    }    
-
-    /* build the graph using content from each ODM-XML and Define-XML file */
-    private void processMetadataFiles(TreeMap<String, Vertex> metadata) {
-        for (String key : metadata.keySet()) {
-            String nodePhase = metadata.get(key).getPhase();
-            switch (nodePhase) {
-                case Phase.EHR_PHASE:
-                    if (ConfigReader.getVerbose()) 
-                        System.out.println("Warning: EHR graph not yet implemented (Tracexml.processMetadataFiles).");
-                    break;
-                case Phase.DATA_COLLECTION_PHASE:
-                    if (ConfigReader.getVerbose()) 
-                        System.out.println("building graph from DATA_COLLECTION metadata...");
-                    odmGraph.buildODMGraph(traceGraph, metadata.get(key));
-                    break;
-                case Phase.TABULATION_PHASE:   
-                    if (ConfigReader.getVerbose()) 
-                        System.out.println("building graph from TABULATION metadata...");
-                    defGraph.buildDefGraph(traceGraph, metadata.get(key));
-                    break;
-                case Phase.ANALYSIS_PHASE:   
-                    if (ConfigReader.getVerbose()) 
-                        System.out.println("building graph from ANALYSIS metadata...");
-                    defGraph.buildDefGraph(traceGraph, metadata.get(key));
-                    break;
-                case Phase.ANALYSIS_RESULTS_PHASE:
-                    if (ConfigReader.getVerbose()) 
-                        System.out.println("Warning: Analysis results graph not yet implemented (Tracexml.processMetadataFiles).");
-                    break;
-                default:
-                    System.out.println("Warning: unknown lifecycle phase: " + metadata.get(key).getPhase());
-                    break;
-           }
-       }
-    }
-
-    /* readMetadataFiles creates the ordered set of XML files to use to generate the graph 
-     * @return TreeMap containing the ordered set of XML files with a life-cycle phase key */
-    private TreeMap<String, Vertex> readMetadataFiles() {
-        checkForMetadataFiles();
-        TreeMap<String, Vertex> vMap = new TreeMap<>();
-        // set data collection node    
-        Vertex dcNode = new Vertex(Phase.DATA_COLLECTION_PHASE);
-        dcNode.setFileName(ConfigReader.getDataCollection());
-        dcNode.setPhase(Phase.DATA_COLLECTION_PHASE);
-        dcNode.setDescription(Phase.DATA_COLLECTION_PHASE_DESC);
-        vMap.put(Phase.DATA_COLLECTION_PHASE_ORDER, dcNode);
-        // set data tabulation node    
-        Vertex dtNode = new Vertex("data-tabulation");
-        dtNode.setFileName(ConfigReader.getDataTabulation());
-        dtNode.setPhase(Phase.TABULATION_PHASE);
-        dtNode.setDescription(Phase.TABULATION_PHASE_DESC);
-        vMap.put(Phase.TABULATION_PHASE_ORDER, dtNode);
-        // set data analysis node    
-        Vertex daNode = new Vertex("data-analysis");
-        daNode.setFileName(ConfigReader.getDataAnalysis());
-        daNode.setPhase(Phase.ANALYSIS_PHASE);
-        daNode.setDescription(Phase.ANALYSIS_PHASE_DESC);
-        vMap.put(Phase.ANALYSIS_PHASE_ORDER, daNode);
-        // save for use with XQueries
-        Display.writeXmlFileList(vMap);
-        return vMap;
-    }        
-    
-    /* ensure each of the expected metadata files can be found */
-    private void checkForMetadataFiles() {
-        checkMetadataFileFound(ConfigReader.getDataCollection(), "Error: Missing ODM data collection file in configuration file or the file listed is not found.");
-        checkMetadataFileFound(ConfigReader.getDataTabulation(), "Error: Missing SDTM Define-XML file in configuration file or the file listed is not found.");
-        checkMetadataFileFound(ConfigReader.getDataAnalysis(), "Error: Missing ADaM Define-XML file in configuration file or the file listed is not found.");
-    }
-    
-    /* performs the actual test to ensure the metadata files can be found */
-    private void checkMetadataFileFound(String metadataFileName, String missingFileMsg) {
-        if (metadataFileName.isEmpty() ||  !(new File(metadataFileName).isFile())) {
-            System.out.println(missingFileMsg);
-            System.exit(0);
-        }
-    }
-    
-    /* XML schema validation option for a future release */
-    private void validateXmlFiles() {
-        schemaValidateXMLFile(ConfigReader.getOdmXsdFile(), ConfigReader.getDataCollection());
-        schemaValidateXMLFile(ConfigReader.getDefineXsdFile(), ConfigReader.getDataTabulation());
-        schemaValidateXMLFile(ConfigReader.getDefineXsdFile(), ConfigReader.getDataAnalysis());
-    }        
-     
-    /* calls the schema validation method for a given XML file */
-    private void schemaValidateXMLFile(String xsdFile, String xmlFile) {
-        if (!xsdFile.isEmpty() && (new File(xsdFile).isFile())) {
-            if (!ValidateXml.validate(xmlFile, xsdFile)) {
-                System.out.println(xmlFile + " failed schema validation with " + xsdFile);
-                System.exit(0);
-            }    
-        }
+    /* list the unreachable nodes found by the engine and optionally load the html report */
+    private void showUnreachableList(TraceResult result, TraceConfig config) {
+        if (result.getUnreachableReport().isEmpty()) return;
+        Display.showUnreachables(result.getUnreachableReport(), isUnreachable, isVerbose);        
+        if (isDisplay) Display.DisplayHtmlPage(config.getXmlPath() + config.getUnreachableHtml());
     }
     
     private void setCommandLineOptions(String[] args) {
@@ -260,10 +128,24 @@ public class Tracexml {
                 isReachable = Boolean.TRUE;
             } else if (argument.contains("unreachable")) {
                 isUnreachable = Boolean.TRUE;
+            } else if (argument.equals("stream")) {
+                isStreaming = Boolean.TRUE;
+            } else if (argument.equals("parallel")) {
+                isParallel = Boolean.TRUE;
             } else if (argument.contains("verbose")) {
-                ConfigReader.setVerbose(Boolean.TRUE);
+                isVerbose = Boolean.TRUE;
             } else if (argument.startsWith("cfg=")) {
                 cfgFileName = argument.substring(argument.indexOf("=")+1); 
+            } else if (argument.startsWith("batch=")) {
+                batch = args[i].substring(args[i].indexOf("=")+1); 
+            } else if (argument.startsWith("threads=")) {
+                try {
+                    threads = Integer.parseInt(argument.substring(argument.indexOf("=")+1));
+                } catch (NumberFormatException ex) {
+                    System.out.println("Invalid threads argument: " + argument);
+                    usage();
+                    System.exit(0);                
+                }
             } else if (argument.equals("help")) {
                 usage();
                 System.exit(0);                
@@ -276,9 +158,20 @@ public class Tracexml {
         
     }
     
-    private void loadConfiguration(String cfgFile) {
-        ConfigReader.loadConfigProperties(cfgFile);
-        graphOutputFileName = ConfigReader.getXmlPath() + ConfigReader.getL3Graph();
+    /* load the configuration file and apply the command-line options to the study configuration */
+    private TraceConfig loadConfiguration(String cfgFile) throws TraceException {
+        TraceConfig config = TraceConfig.load(cfgFile);
+        applyOptions(config);
+        return config;
+    }
+
+    /* apply the command-line options to a study configuration */
+    private void applyOptions(TraceConfig config) {
+        config.setYedExtensions(yEdExtensions);
+        config.setValidate(isValidate);
+        config.setStreaming(isStreaming);
+        config.setParallel(isParallel);
+        config.setVerbose(isVerbose);
     }
     
     /* get the current directory of the jar file as the default for the config file */
@@ -297,6 +190,7 @@ public class Tracexml {
     
     /* print the usage directions that include the command-line arguments */
     private void usage() {
-        System.out.println("Usage: java -jar Tracexml.jar cfg=<config file> [yed] [reachable] [unreachable] [verbose] [validate] [display] [help]");        
+        System.out.println("Usage: java -jar Tracexml.jar cfg=<config file> [yed] [reachable] [unreachable] [verbose] [validate] [stream] [parallel] [display] [help]");        
+        System.out.println("       java -jar Tracexml.jar batch=<config directory or list> [threads=<n>] [yed] [verbose] [validate] [stream] [parallel]");        
     }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017 Sam Hume.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tracexml;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import javax.xml.transform.Source;
+import javax.xml.transform.sax.SAXSource;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * UnreachableReport holds the results of the unreachable node analysis keyed by vertex: the nodes
+ * that are unreachable in error, the nodes expected to be unreachable based on their origin, and the
+ * nodes connected to the root to re-test them. Each set keeps the order nodes were first added and
+ * ignores repeats. The report is streamed to the XSLT stylesheets as SAX events in the unreachable
+ * nodes XML format, so no intermediate XML file is written or re-read.
+ * @version 0.1
+ */
+public class UnreachableReport {
+    private static final String CDATA = "CDATA";
+    private final Set<Vertex> unexpected = new LinkedHashSet<>();
+    private final Set<Vertex> expected = new LinkedHashSet<>();
+    private final Set<Vertex> addedToRoot = new LinkedHashSet<>();
+
+    /**
+     * addUnexpected records a node that is unreachable but should be reachable
+     * @param v Vertex of the unreachable node
+     * @return true if the node was not already recorded
+     */
+    public boolean addUnexpected(Vertex v) {
+        return unexpected.add(v);
+    }
+
+    /**
+     * addExpected records a node that is unreachable as expected from its origin
+     * @param v Vertex of the unreachable node
+     * @return true if the node was not already recorded
+     */
+    public boolean addExpected(Vertex v) {
+        return expected.add(v);
+    }
+
+    /**
+     * addToRoot records a node connected to the root for the re-test
+     * @param v Vertex of the node connected to the root
+     * @return true if the node was not already recorded
+     */
+    public boolean addToRoot(Vertex v) {
+        return addedToRoot.add(v);
+    }
+
+    /**
+     * getter for the nodes that are unreachable but should be reachable
+     * @return Set of Vertex objects in the order they were found
+     */
+    public Set<Vertex> getUnexpected() {
+        return Collections.unmodifiableSet(unexpected);
+    }
+
+    /**
+     * getter for the nodes that are unreachable as expected from their origin
+     * @return Set of Vertex objects in the order they were found
+     */
+    public Set<Vertex> getExpected() {
+        return Collections.unmodifiableSet(expected);
+    }
+
+    /**
+     * getter for the nodes connected to the root for the re-test
+     * @return Set of Vertex objects in the order they were connected
+     */
+    public Set<Vertex> getAddedToRoot() {
+        return Collections.unmodifiableSet(addedToRoot);
+    }
+
+    /**
+     * isEmpty tests whether any unreachable nodes were found
+     * @return true if there are no unexpected or expected unreachable nodes
+     */
+    public boolean isEmpty() {
+        return unexpected.isEmpty() && expected.isEmpty();
+    }
+
+    /**
+     * toSource creates an XSLT input that streams the unreachable nodes, unexpected first - each
+     * transformation needs its own source, and the report must not change while it is read
+     * @return Source of the unreachable nodes XML
+     */
+    public Source toSource() {
+        return new SAXSource(new ReportReader(), new InputSource());
+    }
+
+    /* generates the unreachable nodes XML as SAX events in place of parsing a document */
+    private class ReportReader extends XMLFilterImpl {
+
+        @Override
+        public void parse(InputSource input) throws SAXException {
+            ContentHandler handler = getContentHandler();
+            handler.startDocument();
+            handler.startElement("", "unreachable", "unreachable", new AttributesImpl());
+            writeNodes(handler, unexpected, "no");
+            writeNodes(handler, expected, "yes");
+            handler.endElement("", "unreachable", "unreachable");
+            handler.endDocument();
+        }
+
+        private void writeNodes(ContentHandler handler, Set<Vertex> nodes, String isExpected) throws SAXException {
+            AttributesImpl attributes = new AttributesImpl();
+            for (Vertex v : nodes) {
+                attributes.clear();
+                attributes.addAttribute("", "oid", "oid", CDATA, v.getOid());
+                attributes.addAttribute("", "origin", "origin", CDATA, v.getOriginType());
+                attributes.addAttribute("", "expected", "expected", CDATA, isExpected);
+                handler.startElement("", "node", "node", attributes);
+                handler.endElement("", "node", "node");
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@ package tracexml;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -31,34 +32,30 @@ import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
 /**
- * ValidateXml runs schema validation on the XML files
+ * ValidateXml runs schema validation on the XML files. Compiled schemas are cached by XSD path
+ * and shared by every study validated in the JVM - a Schema is immutable and thread-safe.
  * @version 0.1
  */
 public class ValidateXml {
+    private static final ConcurrentHashMap<String, Schema> schemaCache = new ConcurrentHashMap<>();
 
     /**
      * validate is a static method that schema validates the XML input files and provides a boolean to indicate
      * if the file passed or failed validation. Error messages are also printed to the console when validation fails.
      * @param xmlPathFile String containing the path and filename to the XML file to validate
      * @param xsdPathFile String containing the path and filename to the XSD schema file used to validate the XML file
+     * @param verbose boolean if true a message is printed when the XML file passes validation
      * @return Boolean value indicating if the XML file passed or failed schema validation
      */
-    public static Boolean validate(String xmlPathFile, String xsdPathFile) {
+    public static Boolean validate(String xmlPathFile, String xsdPathFile, boolean verbose) {
         Boolean isValid = Boolean.FALSE;
 
         try {
-            String schemaFactoryProperty = "javax.xml.validation.SchemaFactory:" + XMLConstants.W3C_XML_SCHEMA_NS_URI;
-
-            System.setProperty(schemaFactoryProperty, "org.apache.xerces.jaxp.validation.XMLSchemaFactory");
-
+            Schema schema = getSchema(xsdPathFile);
             DocumentBuilderFactory parserFactory = DocumentBuilderFactory.newInstance();
             parserFactory.setNamespaceAware(true);
             parserFactory.setIgnoringElementContentWhitespace(true);
             parserFactory.setIgnoringComments(true);
-
-            SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-            Source schemaSource = new StreamSource(new File(xsdPathFile));
-            Schema schema = factory.newSchema(schemaSource);
             parserFactory.setSchema(schema);
             DocumentBuilder parser = parserFactory.newDocumentBuilder();
 
@@ -70,11 +67,30 @@ public class ValidateXml {
             Document document = parser.parse(new File(define.getPath()));
             validator.validate(new DOMSource(document));
             isValid = Boolean.TRUE;
-            if (ConfigReader.getVerbose()) System.out.println(xmlPathFile + " successfully schema validated");
+            if (verbose) System.out.println(xmlPathFile + " successfully schema validated");
         } catch (SAXException | IOException | ParserConfigurationException ex) {
             System.out.println("Validation error: " + ex.getMessage());
         }
         return isValid;
     }
+
+    /* return the compiled schema for an XSD file, compiling it on first use */
+    private static Schema getSchema(String xsdPathFile) throws SAXException {
+        String key = new File(xsdPathFile).getAbsolutePath();
+        Schema schema = schemaCache.get(key);
+        if (schema != null) return schema;
+        synchronized (schemaCache) {
+            schema = schemaCache.get(key);
+            if (schema == null) {
+                String schemaFactoryProperty = "javax.xml.validation.SchemaFactory:" + XMLConstants.W3C_XML_SCHEMA_NS_URI;
+                System.setProperty(schemaFactoryProperty, "org.apache.xerces.jaxp.validation.XMLSchemaFactory");
+                SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+                Source schemaSource = new StreamSource(new File(key));
+                schema = factory.newSchema(schemaSource);
+                schemaCache.put(key, schema);
+            }
+        }
+        return schema;
+    }
 }
    
\ No newline at end of file
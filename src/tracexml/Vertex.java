@@ -16,16 +16,25 @@
 package tracexml;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 /**
  * Vertex class represents the node objects that comprise the graph generated from
- * the ODM-XML and Define-XML metadata files
+ * the ODM-XML and Define-XML metadata files. Source and target updates are synchronized
+ * on the Vertex so edges can be added by concurrent graph builders.
  * @version 0.1
 */
 public class Vertex {
     private List<Vertex> source = new ArrayList<>();  
     private List<Vertex> target = new ArrayList<>();
+    // normalized OIDs of the sources and targets give constant-time duplicate checks in insertion order lists
+    private final Set<String> sourceKeys = new HashSet<>();
+    private final Set<String> targetKeys = new HashSet<>();
+    private String oidKey;
     private String phase = "";
     private String name = "";
     private String qualifiedName;
@@ -46,7 +55,7 @@ public class Vertex {
      */
     public Vertex(String name, String oid) {
         this.name = name;
-        this.oid = oid;
+        setOid(oid);
     }
 
     /** 
@@ -54,7 +63,7 @@ public class Vertex {
      * @param oid  String containing the OID identifier of the node typically taken from the XML element.
      */
     public Vertex(String oid) {
-        this.oid = oid;
+        setOid(oid);
     }
 
     /**
@@ -62,15 +71,24 @@ public class Vertex {
      * @param node the source node to add to the vertex
      */
     public void addSource(Vertex node) {
+        addSource(node, false);
+    }
+
+    /**
+     * addSource adds a graph source node to a Vertex
+     * @param node the source node to add to the vertex
+     * @param verbose if true a null or duplicate source is reported to the console
+     */
+    public synchronized void addSource(Vertex node, boolean verbose) {
         if (node == null) {
-            if (ConfigReader.getVerbose()) System.out.println("Unable to addSource for null node in Vertex.");
+            if (verbose) System.out.println("Unable to addSource for null node in Vertex.");
             return;
         }
         // each node source should exist only once (should be unique); multiple unique source are ok
-        if (!vertexExists(node, source)) {
+        if (sourceKeys.add(node.getOidKey())) {
             this.source.add(node);
         } else {
-            if (ConfigReader.getVerbose()) System.out.println("Source already exists for node: " + node.getOid());
+            if (verbose) System.out.println("Source already exists for node: " + node.getOid());
         }
     }
     
@@ -79,21 +97,45 @@ public class Vertex {
      * @param node the target node to add to the Vertex
      */
     public void addTarget(Vertex node) {
+        addTarget(node, false);
+    }
+
+    /**
+     * addTarget adds a graph target node to a Vertex
+     * @param node the target node to add to the Vertex
+     * @param verbose if true a null or duplicate target is reported to the console
+     */
+    public synchronized void addTarget(Vertex node, boolean verbose) {
         if (node == null) {
-            if (ConfigReader.getVerbose()) System.out.println("Unable to addTarget for null node in Vertex.");
+            if (verbose) System.out.println("Unable to addTarget for null node in Vertex.");
             return;
         }
         // each node target should exist only once (should be unique); multiple unique targets are ok
-        if (!vertexExists(node, target)) {
+        if (targetKeys.add(node.getOidKey())) {
             this.target.add(node);
         } else {
-            if (ConfigReader.getVerbose()) System.out.println("Target already exists for node: " + node.getOid());            
+            if (verbose) System.out.println("Target already exists for node: " + node.getOid());            
         }
     }
     
-    /* tests to determine if the Vertex exists in a list of Vertexes */
-    private Boolean vertexExists(Vertex node, List<Vertex> vList) {
-        return vList.stream().anyMatch(o -> o.getOid().equalsIgnoreCase(node.getOid()));
+    /**
+     * removeSource removes a graph source node from a Vertex
+     * @param node the source node to remove from the Vertex
+     */
+    public synchronized void removeSource(Vertex node) {
+        if (source.remove(node)) {
+            sourceKeys.remove(node.getOidKey());
+        }
+    }
+
+    /**
+     * removeTarget removes a graph target node from a Vertex
+     * @param node the target node to remove from the Vertex
+     */
+    public synchronized void removeTarget(Vertex node) {
+        if (target.remove(node)) {
+            targetKeys.remove(node.getOidKey());
+        }
     }
         
     /**
@@ -112,6 +154,14 @@ public class Vertex {
         return this.oid;
     } 
     
+    /**
+     * getter for the normalized OID used to match nodes without regard to case
+     * @return String lower case OID
+     */
+    public String getOidKey() {
+        return this.oidKey;
+    }
+
     /**
      * getter for the identifier (node id) for use in the GraphML graph
      * @return String nodeId for the Vertex for use in the GraphML graph
@@ -162,18 +212,18 @@ public class Vertex {
 
     /**
      * getter for a list of Vertexes that are a source for this Vertex within the graph
-     * @return List of source Vertexes or nodes
+     * @return read-only List of source Vertexes or nodes
      */
     public List<Vertex> getSource() {
-        return source;
+        return Collections.unmodifiableList(source);
     }
 
     /**
      * getter for a list of Vertexes that are a target for this Vertex within the graph
-     * @return List of target Vertexes or nodes
+     * @return read-only List of target Vertexes or nodes
      */
     public List<Vertex> getTarget() {
-        return target;
+        return Collections.unmodifiableList(target);
     }
 
     /**
@@ -246,6 +296,7 @@ public class Vertex {
      */
     public void setOid(String oid) {
         this.oid = oid;
+        this.oidKey = (oid == null) ? null : oid.toLowerCase(Locale.ROOT);
     }
     
     /**
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 Sam Hume.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tracexml;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * XmlSanitizingWriter replaces characters that are not allowed in XML 1.0, including unpaired
+ * surrogates, with the Unicode replacement character as the XML is written. Used in place of
+ * re-reading and re-writing generated files to address the Invalid byte 1 of 1-byte UTF-8
+ * sequence issue (fix-invalid-byte-1).
+ * @version 0.1
+ */
+public class XmlSanitizingWriter extends FilterWriter {
+    private static final char REPLACEMENT = '\uFFFD';
+    private static final int CHUNK_SIZE = 1024;
+    private char highSurrogate;
+    // reused to sanitize strings in chunks without copying the whole string
+    private char[] chunk;
+
+    /**
+     * XmlSanitizingWriter constructor
+     * @param out Writer that encodes the sanitized characters (e.g. an OutputStreamWriter using UTF-8)
+     */
+    public XmlSanitizingWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        char ch = (char) c;
+        if (highSurrogate != 0) {
+            if (Character.isLowSurrogate(ch)) {
+                out.write(highSurrogate);
+                out.write(ch);
+                highSurrogate = 0;
+                return;
+            }
+            out.write(REPLACEMENT);
+            highSurrogate = 0;
+        }
+        if (Character.isHighSurrogate(ch)) {
+            // wait for the low surrogate, which may arrive in the next write
+            highSurrogate = ch;
+        } else if (isXmlChar(ch) && !Character.isLowSurrogate(ch)) {
+            out.write(ch);
+        } else {
+            out.write(REPLACEMENT);
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        int start = off;
+        int end = off + len;
+        if (highSurrogate == 0) {
+            // pass through the run of characters that need no repair
+            while (start < end && isXmlChar(cbuf[start]) && !Character.isSurrogate(cbuf[start])) {
+                start++;
+            }
+            out.write(cbuf, off, start - off);
+        }
+        for (int i = start; i < end; i++) {
+            write(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        if (chunk == null) chunk = new char[CHUNK_SIZE];
+        int end = off + len;
+        while (off < end) {
+            int count = Math.min(CHUNK_SIZE, end - off);
+            str.getChars(off, off + count, chunk, 0);
+            write(chunk, 0, count);
+            off += count;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (highSurrogate != 0) {
+            out.write(REPLACEMENT);
+            highSurrogate = 0;
+        }
+        out.close();
+    }
+
+    /* characters allowed by the XML 1.0 Char production, with surrogates checked in pairs by the caller */
+    private static boolean isXmlChar(char ch) {
+        return ch == 0x9 || ch == 0xA || ch == 0xD || (ch >= 0x20 && ch <= 0xFFFD);
+    }
+}
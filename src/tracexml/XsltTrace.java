@@ -15,18 +15,28 @@
  */
 package tracexml;
 
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.stream.StreamSource;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 
 /**  
- * XsltTrace class transforms the XML outputs of Trace-XML
+ * XsltTrace class transforms the XML outputs of Trace-XML. Each stylesheet is compiled once into
+ * Templates that are cached by path and shared by every transformation, including those run 
+ * concurrently. The XML to transform can be a file or a Source streamed from memory.
  * @version 0.1
  */
 public class XsltTrace {
+    private static final TransformerFactory factory = TransformerFactory.newInstance();
+    private static final ConcurrentHashMap<String, Templates> templatesCache = new ConcurrentHashMap<>();
     private final String xmlFileNameIn;
+    private final Source xmlSourceIn;
     private final String xslFileNameIn;
     private String fileNameOut;
     
@@ -37,6 +47,18 @@ public class XsltTrace {
      */
     public XsltTrace(String xmlFileName, String xslFileName) {
         this.xmlFileNameIn = xmlFileName;
+        this.xmlSourceIn = null;
+        this.xslFileNameIn = xslFileName;
+    }
+
+    /**
+     * XsltTrace constructor for XML streamed from memory - a Source is read by a single transformation
+     * @param xmlSource Source of the XML to be transformed (e.g. UnreachableReport.toSource)
+     * @param xslFileName String name and path of the XSLT file to transform the XML
+     */
+    public XsltTrace(Source xmlSource, String xslFileName) {
+        this.xmlFileNameIn = null;
+        this.xmlSourceIn = xmlSource;
         this.xslFileNameIn = xslFileName;
     }
     
@@ -46,15 +68,29 @@ public class XsltTrace {
      */
     public void transformXMLFile(String fileNameOutput) {
         fileNameOut = fileNameOutput;
-        TransformerFactory factory = TransformerFactory.newInstance();
-        StreamSource xslStream = new StreamSource(xslFileNameIn);
-        StreamSource xmlIn = new StreamSource(xmlFileNameIn);
-        StreamResult fileOut = new StreamResult(fileNameOut);
+        Source xmlIn = (xmlSourceIn != null) ? xmlSourceIn : new StreamSource(xmlFileNameIn);
+        StreamResult fileOut = new StreamResult(new File(fileNameOut));
         try {
-            Transformer transformer = factory.newTransformer(xslStream);
+            Transformer transformer = getTemplates(xslFileNameIn).newTransformer();
             transformer.transform(xmlIn, fileOut);
         } catch (TransformerException e) {
             System.out.println("Error transforming XML file. " + e.getMessage());
         }               
     }
+
+    /* returns the compiled stylesheet, compiling it the first time it is used - the factory is not thread safe */
+    private static Templates getTemplates(String xslFileName) throws TransformerConfigurationException {
+        String xslPath = new File(xslFileName).getAbsolutePath();
+        Templates templates = templatesCache.get(xslPath);
+        if (templates == null) {
+            synchronized (factory) {
+                templates = templatesCache.get(xslPath);
+                if (templates == null) {
+                    templates = factory.newTemplates(new StreamSource(new File(xslPath)));
+                    templatesCache.put(xslPath, templates);
+                }
+            }
+        }
+        return templates;
+    }
 }
\ No newline at end of file
@@ -15,19 +15,32 @@
  */
 package tracexml;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import org.jdom2.Attribute;
 import org.jdom2.Element;
 import org.jdom2.Namespace;
+import org.jdom2.output.XMLOutputter;
 
 /**
  *  yEd graph editor Trace-XML extensions. 
  *  Add XML content to the Trace-XML GraphML file to support basic yEd compatibility.
+ *  Node shapes are shared SVG resources, one per node style, referenced by each node.
  *  @version 0.1 
 */
 public class YedExt {
     private final Namespace yns = Namespace.getNamespace("y", "http://www.yworks.com/xml/graphml");
     private final Namespace ns = Namespace.getNamespace("http://graphml.graphdrawing.org/xmlns");
+    // placeholders for the variable fields of the pre-rendered graphics templates
+    private static final String LABEL_FIELD = "@label@";
+    private static final String STYLE_FIELD = "@style@";
+    private static final String KEY_FIELD = "@key@";
+    private GraphicsTemplate nodeTemplate;
+    private GraphicsTemplate edgeTemplate;
     
 
     public void addNameSpace(Element root) {
@@ -129,25 +142,40 @@ public class YedExt {
         e.addContent(polyLineEdge);                 
     }   
     
-    /* node graphics are only needed to support yEd rendering */
-    public void createNodeGraphics(Element e, String label, String nodeColor, String keyId) {
+    /* shared node styles - one SVG resource per node fill color */
+    public void createResources(Element e, List<String> styleColors, String keyId) {
         e.setAttribute(new Attribute("key", keyId));
-        Element shapeNode = new Element("ShapeNode", yns);
+        Element resources = new Element("Resources", yns);
+        for (int i = 0; i < styleColors.size(); i++) {
+            Element resource = new Element("Resource", yns);
+            resource.setAttribute(new Attribute("id", getStyleId(i)));
+            resource.setText("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"30\" height=\"30\">"
+                    + "<rect x=\"0.5\" y=\"0.5\" width=\"29\" height=\"29\" fill=\"" + styleColors.get(i) 
+                    + "\" stroke=\"#000000\" stroke-width=\"1\"/></svg>");
+            resources.addContent(resource);
+        }
+        e.addContent(resources);
+    }
+
+    /**
+     * getStyleId returns the resource id of a shared node style
+     * @param styleIndex int position of the style in the list passed to createResources
+     * @return String resource id referenced by the node graphics
+     */
+    public String getStyleId(int styleIndex) {
+        return String.valueOf(styleIndex + 1);
+    }
+
+    /* node graphics are only needed to support yEd rendering - the node shape references a shared style */
+    public void createNodeGraphics(Element e, String label, String styleId, String keyId) {
+        e.setAttribute(new Attribute("key", keyId));
+        Element svgNode = new Element("SVGNode", yns);
         Element geometry = new Element("Geometry", yns);
         geometry.setAttribute(new Attribute("height", "30.0"));
         geometry.setAttribute(new Attribute("width", "30.0"));
         geometry.setAttribute(new Attribute("x", "32.0"));
         geometry.setAttribute(new Attribute("y", "32.0"));
-        shapeNode.addContent(geometry);
-        Element fill = new Element("Fill", yns);
-        fill.setAttribute(new Attribute("color", nodeColor));
-        fill.setAttribute(new Attribute("transparent", "false"));
-        shapeNode.addContent(fill);
-        Element borderStyle = new Element("BorderStyle", yns);
-        borderStyle.setAttribute(new Attribute("color", "#000000"));
-        borderStyle.setAttribute(new Attribute("type", "line"));
-        borderStyle.setAttribute(new Attribute("width", "1.0"));
-        shapeNode.addContent(borderStyle);
+        svgNode.addContent(geometry);
 
         Element nodeLabel = new Element("NodeLabel", yns);
         nodeLabel.setAttribute(new Attribute("alignment", "center"));
@@ -165,7 +193,7 @@ public class YedExt {
         nodeLabel.setAttribute(new Attribute("x", "9.7"));
         nodeLabel.setAttribute(new Attribute("y", "5.7"));
         nodeLabel.setText(label);
-        shapeNode.addContent(nodeLabel);
+        svgNode.addContent(nodeLabel);
         
         Element labelModel = new Element("LabelModel", yns);
         nodeLabel.addContent(labelModel);
@@ -188,13 +216,60 @@ public class YedExt {
         smartNodeLabelModelParam.setAttribute(new Attribute("upY", "-1.0"));
         modelParameter.addContent(smartNodeLabelModelParam);
        
-        Element shape = new Element("Shape", yns);
-        shape.setAttribute(new Attribute("type", "rectangle"));
-        nodeLabel.addContent(shape);
+        Element svgModel = new Element("SVGModel", yns);
+        svgModel.setAttribute(new Attribute("svgBoundsPolicy", "0"));
+        Element svgContent = new Element("SVGContent", yns);
+        svgContent.setAttribute(new Attribute("refid", styleId));
+        svgModel.addContent(svgContent);
+        svgNode.addContent(svgModel);
         // add all the graphic nodes and attributes to the data element        
-        e.addContent(shapeNode);                 
+        e.addContent(svgNode);                 
     } 
     
+    /**
+     * writeNodeGraphics writes the node graphics data element from a template rendered once
+     * by createNodeGraphics, splicing in the variable fields
+     * @param out OutputStream positioned inside the GraphML node element
+     * @param label String node label
+     * @param styleId String resource id of the shared node style
+     * @param keyId String id of the yfiles.nodegraphics key
+     * @throws IOException if the graphics cannot be written
+     */
+    public void writeNodeGraphics(OutputStream out, String label, String styleId, String keyId) throws IOException {
+        getNodeTemplate().write(out, label, styleId, keyId);
+    }
+
+    /**
+     * writeEdgeGraphics writes the edge graphics data element from a template rendered once
+     * by createEdgeGraphics, splicing in the variable fields
+     * @param out OutputStream positioned inside the GraphML edge element
+     * @param label String edge label
+     * @param keyId String id of the yfiles.edgegraphics key
+     * @throws IOException if the graphics cannot be written
+     */
+    public void writeEdgeGraphics(OutputStream out, String label, String keyId) throws IOException {
+        getEdgeTemplate().write(out, label, STYLE_FIELD, keyId);
+    }
+
+    /* templates are rendered on first use - synchronized as chunks of the graph are written concurrently */
+    private synchronized GraphicsTemplate getNodeTemplate() {
+        if (nodeTemplate == null) {
+            Element e = new Element("data", ns);
+            createNodeGraphics(e, LABEL_FIELD, STYLE_FIELD, KEY_FIELD);
+            nodeTemplate = new GraphicsTemplate(e);
+        }
+        return nodeTemplate;
+    }
+
+    private synchronized GraphicsTemplate getEdgeTemplate() {
+        if (edgeTemplate == null) {
+            Element e = new Element("data", ns);
+            createEdgeGraphics(e, LABEL_FIELD, KEY_FIELD);
+            edgeTemplate = new GraphicsTemplate(e);
+        }
+        return edgeTemplate;
+    }
+
     public void addYedKeys(Element root, HashMap<String, String> keyTable) {
             Element key8 = new Element("key", ns);
             key8.setAttribute(new Attribute("yfiles.type", "nodegraphics"));
@@ -231,4 +306,50 @@ public class YedExt {
             root.addContent(key15);
             keyTable.put("yfiles.portuserdata", "d15");        
     }
+
+    /* UTF-8 bytes of a serialized graphics data element split around the placeholder fields */
+    private class GraphicsTemplate {
+        private final List<byte[]> segments = new ArrayList<>();
+        private final List<String> fields = new ArrayList<>();
+
+        GraphicsTemplate(Element data) {
+            // serialize inside a parent declaring the yEd namespace so it is not repeated in the template
+            Element parent = new Element("node", ns);
+            parent.addNamespaceDeclaration(yns);
+            parent.addContent(data);
+            String xml = new XMLOutputter().outputString(parent);
+            xml = xml.substring(xml.indexOf("<data"), xml.lastIndexOf("</node>"));
+            int start = 0;
+            while (true) {
+                int next = -1;
+                String field = null;
+                for (String f : new String[] {LABEL_FIELD, STYLE_FIELD, KEY_FIELD}) {
+                    int at = xml.indexOf(f, start);
+                    if (at >= 0 && (next < 0 || at < next)) {
+                        next = at;
+                        field = f;
+                    }
+                }
+                if (field == null) break;
+                segments.add(xml.substring(start, next).getBytes(StandardCharsets.UTF_8));
+                fields.add(field);
+                start = next + field.length();
+            }
+            segments.add(xml.substring(start).getBytes(StandardCharsets.UTF_8));
+        }
+
+        void write(OutputStream out, String label, String styleId, String keyId) throws IOException {
+            for (int i = 0; i < fields.size(); i++) {
+                out.write(segments.get(i));
+                String field = fields.get(i);
+                String value = field.equals(LABEL_FIELD) ? label : field.equals(STYLE_FIELD) ? styleId : keyId;
+                out.write(escape(value).getBytes(StandardCharsets.UTF_8));
+            }
+            out.write(segments.get(fields.size()));
+        }
+
+        private String escape(String value) {
+            return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+        }
+    }
 }